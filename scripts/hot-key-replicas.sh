@@ -0,0 +1,88 @@
+#!/usr/bin/env bash
+# @author hwj
+# @create: 2024-09-25 20:10
+# @Description: 热点 key 副本分布演示：在本机启动一个 Redis Cluster（默认 3 个主节点），
+#               分别模拟“只读主 key”和“随机读主 key + 副本”两种方式，打印每个节点处理的 GET 次数。
+#               副本 key 的命名与 CacheClient 一致：{key}#r1 .. {key}#rN
+#
+# 用法：scripts/hot-key-replicas.sh [节点数=3] [副本数=节点数-1] [读取次数=30000]
+# 依赖：redis-server、redis-cli（5.0 及以上，需要 --cluster 子命令）
+
+set -euo pipefail
+
+NODES=${1:-3}
+REPLICAS=${2:-$((NODES - 1))}
+READS=${3:-30000}
+BASE_PORT=${BASE_PORT:-7101}
+KEY=${KEY:-cache:shop:v0:1}
+
+WORK_DIR=$(mktemp -d -t hmdp-hot-key-XXXXXX)
+PORTS=()
+for ((i = 0; i < NODES; i++)); do
+    PORTS+=($((BASE_PORT + i)))
+done
+
+cleanup() {
+    for port in "${PORTS[@]}"; do
+        redis-cli -p "$port" shutdown nosave >/dev/null 2>&1 || true
+    done
+    rm -rf "$WORK_DIR"
+}
+trap cleanup EXIT
+
+# 1.启动节点并组建集群
+for port in "${PORTS[@]}"; do
+    mkdir -p "$WORK_DIR/$port"
+    redis-server --port "$port" --dir "$WORK_DIR/$port" --cluster-enabled yes \
+        --cluster-config-file nodes.conf --appendonly no --save "" --daemonize yes \
+        --logfile "$WORK_DIR/$port/redis.log"
+done
+for port in "${PORTS[@]}"; do
+    until redis-cli -p "$port" ping >/dev/null 2>&1; do sleep 0.1; done
+done
+hosts=()
+for port in "${PORTS[@]}"; do
+    hosts+=("127.0.0.1:$port")
+done
+redis-cli --cluster create "${hosts[@]}" --cluster-replicas 0 --cluster-yes >/dev/null
+until redis-cli -p "${PORTS[0]}" cluster info | grep -q 'cluster_state:ok'; do sleep 0.2; done
+
+# 2.写入主 key 和副本，打印各自所在的槽和节点
+keys=("$KEY")
+for ((i = 1; i <= REPLICAS; i++)); do
+    keys+=("$KEY#r$i")
+done
+echo "节点数：$NODES，副本数：$REPLICAS，读取次数：$READS"
+for key in "${keys[@]}"; do
+    redis-cli -c -p "${PORTS[0]}" set "$key" '{"id":1,"name":"hot shop"}' >/dev/null
+    slot=$(redis-cli -p "${PORTS[0]}" cluster keyslot "$key")
+    for port in "${PORTS[@]}"; do
+        if [ "$(redis-cli -p "$port" exists "$key")" = "1" ]; then
+            printf '  %-24s slot %-6s -> 127.0.0.1:%s\n' "$key" "$slot" "$port"
+        fi
+    done
+done
+
+# 把 stdin 中的命令交给集群执行（redis-cli -c 会按 MOVED 重定向到对应节点），然后打印每个节点的 GET 次数
+run_and_report() {
+    local title=$1
+    for port in "${PORTS[@]}"; do
+        redis-cli -p "$port" config resetstat >/dev/null
+    done
+    redis-cli -c -p "${PORTS[0]}" >/dev/null
+    echo "$title"
+    for port in "${PORTS[@]}"; do
+        calls=$(redis-cli -p "$port" info commandstats | tr -d '\r' | sed -n 's/^cmdstat_get:calls=\([0-9]*\).*/\1/p')
+        printf '  127.0.0.1:%s GET %s\n' "$port" "${calls:-0}"
+    done
+}
+
+# 3.只读主 key：全部请求落在同一个节点
+for ((i = 0; i < READS; i++)); do
+    echo "GET $KEY"
+done | run_and_report "只读主 key："
+
+# 4.在主 key 和副本中随机选择：请求分散到副本所在的节点
+for ((i = 0; i < READS; i++)); do
+    echo "GET ${keys[RANDOM % ${#keys[@]}]}"
+done | run_and_report "随机读主 key 和副本："
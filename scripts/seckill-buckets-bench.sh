@@ -0,0 +1,142 @@
+#!/usr/bin/env bash
+# @author hwj
+# @create: 2024-09-28 21:00
+# @Description: 秒杀库存分桶压测：在本机启动一个 Redis Cluster（默认 3 个主节点），用 redis-benchmark 执行 seckill-bucket.lua，
+#               分别测试“全部请求落在 1 个桶”和“请求按用户分散到 N 个桶”两种情况的总吞吐量。
+#               桶的 key 与 SeckillStockBuckets 一致：seckill:stock:{voucherId:桶号}、seckill:order:{voucherId:桶号}，
+#               每个桶由一个 redis-benchmark 进程直接连到该桶所在的节点（相当于 userId % N 选桶），用户 id 随机生成。
+#               每次秒杀成功后还要 INCR 订单序列号（icr:order:{日期}）、XADD 消息队列（stream.orders），这两个 key 不分桶，
+#               同时各用一个 redis-benchmark 进程压到它们所在的节点，与扣库存的请求数相同。
+#               分桶只分散了扣库存，整条链路的吞吐量上限仍是序列号和消息队列所在节点能承受的 INCR、XADD 速率，
+#               输出中“整条链路”按最慢的一组计算。
+#               各节点需要独占 CPU 核心结果才有意义，节点数不要超过核心数的一半（另一半留给 redis-benchmark）
+#
+# 用法：scripts/seckill-buckets-bench.sh [节点数=3] [桶数=节点数] [请求数=300000] [并发连接数=60]
+# 依赖：redis-server、redis-cli、redis-benchmark（5.0 及以上）
+
+set -euo pipefail
+
+NODES=${1:-3}
+BUCKETS=${2:-$NODES}
+REQUESTS=${3:-300000}
+CLIENTS=${4:-60}
+BASE_PORT=${BASE_PORT:-7201}
+VOUCHER_ID=${VOUCHER_ID:-1}
+# 与 RedisGlobalIdGenerator、RedisConstants.SECKILL_ORDER_STREAM 一致
+SEQUENCE_KEY="icr:order:$(date +%Y:%m:%d)"
+ORDER_STREAM=stream.orders
+SCRIPT_FILE=$(cd "$(dirname "$0")/.." && pwd)/src/main/resources/seckill-bucket.lua
+
+WORK_DIR=$(mktemp -d -t hmdp-seckill-XXXXXX)
+PORTS=()
+for ((i = 0; i < NODES; i++)); do
+    PORTS+=($((BASE_PORT + i)))
+done
+
+cleanup() {
+    for port in "${PORTS[@]}"; do
+        redis-cli -p "$port" shutdown nosave >/dev/null 2>&1 || true
+    done
+    rm -rf "$WORK_DIR"
+}
+trap cleanup EXIT
+
+# 1.启动节点并组建集群
+for port in "${PORTS[@]}"; do
+    mkdir -p "$WORK_DIR/$port"
+    redis-server --port "$port" --dir "$WORK_DIR/$port" --cluster-enabled yes \
+        --cluster-config-file nodes.conf --appendonly no --save "" --daemonize yes \
+        --logfile "$WORK_DIR/$port/redis.log"
+done
+for port in "${PORTS[@]}"; do
+    until redis-cli -p "$port" ping >/dev/null 2>&1; do sleep 0.1; done
+done
+hosts=()
+for port in "${PORTS[@]}"; do
+    hosts+=("127.0.0.1:$port")
+done
+redis-cli --cluster create "${hosts[@]}" --cluster-replicas 0 --cluster-yes >/dev/null
+until redis-cli -p "${PORTS[0]}" cluster info | grep -q 'cluster_state:ok'; do sleep 0.2; done
+
+# 2.在每个节点加载脚本
+SHA=""
+for port in "${PORTS[@]}"; do
+    SHA=$(redis-cli -p "$port" script load "$(cat "$SCRIPT_FILE")")
+done
+
+# 返回 key 所在节点的端口（临时写入 key 找到所在节点后删除，不影响之后的压测）
+node_of() {
+    local key=$1
+    redis-cli -c -p "${PORTS[0]}" set "$key" 0 >/dev/null
+    for port in "${PORTS[@]}"; do
+        if [ "$(redis-cli -p "$port" exists "$key")" = "1" ]; then
+            redis-cli -p "$port" del "$key" >/dev/null
+            echo "$port"
+            return
+        fi
+    done
+}
+
+# 后台运行一个 redis-benchmark 进程，结果（每秒请求数）写入 $WORK_DIR/$name.out
+bench() {
+    local name=$1
+    shift
+    redis-benchmark -q "$@" 2>/dev/null | tr '\r' '\n' | grep 'requests per second' | tail -1 \
+        >"$WORK_DIR/$name.out" &
+    pids+=($!)
+}
+
+# 从 redis-benchmark -q 的输出中取出每秒请求数（key 中带冒号，按 requests 前一个字段取）
+rps() {
+    awk '{ for (i = 2; i <= NF; i++) if ($i == "requests") print $(i - 1) }' "$1"
+}
+
+# 按桶数 n 压测：库存设置得足够大，保证压测期间不会售罄；每个桶一个 redis-benchmark 进程，连接数和请求数平均分配。
+# 序列号和消息队列各一个进程，请求数与扣库存的总请求数相同（每次秒杀成功各执行一次），连接数与一个桶相同
+run() {
+    local n=$1
+    local pids=()
+    local ports=()
+    local start end
+    local seq_port stream_port
+    seq_port=$(node_of "$SEQUENCE_KEY")
+    stream_port=$(node_of "$ORDER_STREAM")
+    echo "  序列号 $SEQUENCE_KEY -> 127.0.0.1:$seq_port，消息队列 $ORDER_STREAM -> 127.0.0.1:$stream_port"
+    for ((b = 0; b < n; b++)); do
+        local tag="{$VOUCHER_ID:$b}"
+        ports+=("$(node_of "seckill:stock:$tag")")
+        redis-cli -p "${ports[$b]}" set "seckill:stock:$tag" 1000000000000 >/dev/null
+        redis-cli -p "${ports[$b]}" del "seckill:order:$tag" >/dev/null
+        echo "  桶 $b -> 127.0.0.1:${ports[$b]}"
+    done
+    rm -f "$WORK_DIR"/*.out
+    start=$(date +%s.%N)
+    for ((b = 0; b < n; b++)); do
+        local tag="{$VOUCHER_ID:$b}"
+        bench "bucket-$b" -p "${ports[$b]}" -c $((CLIENTS / n)) -n $((REQUESTS / n)) -r 1000000000 \
+            evalsha "$SHA" 2 "seckill:stock:$tag" "seckill:order:$tag" __rand_int__
+    done
+    bench sequence -p "$seq_port" -c $((CLIENTS / n)) -n "$REQUESTS" incr "$SEQUENCE_KEY"
+    bench stream -p "$stream_port" -c $((CLIENTS / n)) -n "$REQUESTS" -r 1000000000 \
+        xadd "$ORDER_STREAM" '*' userId __rand_int__ voucherId "$VOUCHER_ID" id __rand_int__
+    for pid in "${pids[@]}"; do
+        wait "$pid"
+    done
+    end=$(date +%s.%N)
+    awk -v r="$REQUESTS" -v s="$start" -v e="$end" 'BEGIN { printf "  扣库存总吞吐量：%.0f 次/秒\n", r / (e - s) }'
+    echo "  序列号 INCR：$(rps "$WORK_DIR/sequence.out") 次/秒"
+    echo "  消息队列 XADD：$(rps "$WORK_DIR/stream.out") 次/秒"
+    # 整条链路每次秒杀都要经过扣库存、INCR、XADD，吞吐量取三者中最慢的
+    awk -v r="$REQUESTS" -v s="$start" -v e="$end" '
+        /requests per second/ { for (i = 1; i <= NF; i++) if ($i == "requests") v = $(i - 1); if (m == "" || v < m) m = v }
+        END { t = r / (e - s); if (m != "" && m < t) t = m; printf "  整条链路：%.0f 次/秒\n", t }' \
+        "$WORK_DIR/sequence.out" "$WORK_DIR/stream.out"
+    redis-cli -p "$stream_port" del "$ORDER_STREAM" >/dev/null
+}
+
+echo "节点数：$NODES，桶数：$BUCKETS，请求数：$REQUESTS，并发连接数：$CLIENTS"
+echo "不分桶（1 个桶）："
+run 1
+VOUCHER_ID=$((VOUCHER_ID + 1))
+echo "分 $BUCKETS 个桶："
+run "$BUCKETS"
@@ -0,0 +1,147 @@
+package com.hmdp;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.CompressingCacheCodec;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.RedisData;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * @author hwj
+ * @create: 2024-09-11 20:30
+ * @Description: 缓存编解码器基准测试，比较 JSON 与二进制编解码的吞吐量、内存分配率（GC profiler 的
+ *               gc.alloc.rate.norm）和编码后的字节数。不参与 test 阶段，mvn -Pbenchmark test-compile 后运行 main 方法
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheCodecBenchmark {
+
+    @Param({"json", "binary", "json-lz4"})
+    private String codecName;
+
+    @Param({"shop", "blog", "shopType", "userDTO", "shopLogicalExpire"})
+    private String valueName;
+
+    private CacheCodec codec;
+
+    private Object value;
+
+    private Class<?> type;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        codec = createCodec(codecName);
+        value = sample(valueName);
+        type = value instanceof RedisData ? ((RedisData)value).getData().getClass() : value.getClass();
+        encoded = encode(codec, value);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return encode(codec, value);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return value instanceof RedisData ? codec.decodeRedisData(encoded, type) : codec.decode(encoded, type);
+    }
+
+    private static byte[] encode(CacheCodec codec, Object value) {
+        return value instanceof RedisData ? codec.encodeRedisData((RedisData)value) : codec.encode(value);
+    }
+
+    private static CacheCodec createCodec(String name) {
+        JsonCacheCodec json = new JsonCacheCodec();
+        if ("json-lz4".equals(name)) {
+            return new CompressingCacheCodec(json, 1024, new SimpleMeterRegistry());
+        }
+        return "binary".equals(name) ? new BinaryCacheCodec(json) : json;
+    }
+
+    private static Object sample(String name) {
+        switch (name) {
+            case "shop":
+                return shop();
+            case "blog":
+                return blog();
+            case "shopType":
+                return new ShopType().setId(1L).setName("美食").setIcon("/types/ms.png").setSort(1)
+                    .setCreateTime(LocalDateTime.of(2021, 12, 22, 20, 17, 47))
+                    .setUpdateTime(LocalDateTime.of(2021, 12, 23, 11, 24, 31));
+            case "userDTO":
+                UserDTO userDTO = new UserDTO();
+                userDTO.setId(1010L);
+                userDTO.setNickName("user_slxaxy2au9f3tanffaxr");
+                userDTO.setIcon("/imgs/icons/kkjtbcr.jpg");
+                return userDTO;
+            case "shopLogicalExpire":
+                RedisData redisData = new RedisData();
+                redisData.setData(shop());
+                redisData.setExpireTime(LocalDateTime.now().plusMinutes(30));
+                return redisData;
+            default:
+                throw new IllegalArgumentException(name);
+        }
+    }
+
+    private static Shop shop() {
+        return new Shop().setId(1L).setName("103茶餐厅").setTypeId(1L)
+            .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRt"
+                + "FoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqa"
+                + "wWswzk.jpg,https://qcloud.dpfile.com/pc/IOf6VX3qaBgFXFVgp75w-KKJmWZjFc8GXDU8g9bQC6YGCpAmG00QbfT4vCCBj7"
+                + "njuzFvxlbkWx5uwqY2qcjixFEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vmIU_8ZGOT1OjpJmLxG6urQ.jpg")
+            .setArea("大关").setAddress("金华路锦昌文华苑29号").setX(120.149192).setY(30.316078).setAvgPrice(80L)
+            .setSold(4215).setComments(3035).setScore(37).setOpenHours("10:00-22:00")
+            .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+            .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+
+    private static Blog blog() {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            content.append("生活就是一半烟火·一半诗意<br/>手执烟火谋生活·心怀诗意以谋爱·<br/>");
+        }
+        return new Blog().setId(4L).setShopId(4L).setUserId(2L).setTitle("无尽浪漫的夜晚丨在万花丛中摇晃着红酒杯🍷品战斧牛排🥩")
+            .setImages("/imgs/blogs/7/14/4771fefb-1a87-4252-816c-9f7ec41ffa4a.jpg,"
+                + "/imgs/blogs/4/10/2f07e3c9-ddce-482d-9ea7-c21450f8d7cd.jpg,"
+                + "/imgs/blogs/2/6/b0756279-65da-4f2d-b62a-33f74b06454a.jpg")
+            .setContent(content.toString()).setLiked(2).setComments(104)
+            .setCreateTime(LocalDateTime.of(2021, 12, 28, 19, 50, 1))
+            .setUpdateTime(LocalDateTime.of(2022, 3, 10, 14, 26, 34));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        // 编码后的字节数（即 Redis 中每个 value 的大小）
+        for (String valueName : new String[] {"shop", "blog", "shopType", "userDTO", "shopLogicalExpire"}) {
+            Object value = sample(valueName);
+            System.out.printf("%-18s json: %5d bytes, binary: %5d bytes, json-lz4: %5d bytes%n", valueName,
+                encode(createCodec("json"), value).length, encode(createCodec("binary"), value).length,
+                encode(createCodec("json-lz4"), value).length);
+        }
+        Options options = new OptionsBuilder().include(CacheCodecBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,28 @@
+package com.hmdp.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @author hwj
+ * @create: 2024-09-21 19:40
+ * @Description: 与 CachedQuery 配套的缓存删除：方法正常返回后由 CacheInvalidator 删除缓存（有事务时在提交后删除，并延迟双删）
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CachedEvict {
+
+    /**
+     * 缓存 key 前缀，与 CachedQuery 的 prefix 一致
+     */
+    String prefix();
+
+    /**
+     * SpEL 表达式，可以引用方法参数和返回值（#result），比如 "#shop.id"
+     */
+    String key();
+}
@@ -0,0 +1,69 @@
+package com.hmdp.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author hwj
+ * @create: 2024-09-21 19:30
+ * @Description: 声明式缓存查询，由 CachedQueryAspect 交给 CacheClient 处理：方法的返回值即缓存的值（返回类型即解码类型），
+ *               方法体只负责查库。同一个类内部调用需要通过 AopContext.currentProxy() 才会生效
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CachedQuery {
+
+    /**
+     * 缓存 key 前缀，比如 RedisConstants.CACHE_SHOP_KEY
+     */
+    String prefix();
+
+    /**
+     * SpEL 表达式，计算结果拼接在 prefix 后面，比如 "#id"
+     */
+    String key();
+
+    /**
+     * 缓存时间（逻辑过期模式下为逻辑过期时间）
+     */
+    long ttl();
+
+    TimeUnit unit() default TimeUnit.MINUTES;
+
+    Mode mode() default Mode.PASS_THROUGH;
+
+    /**
+     * 查不到数据时是否缓存空值（仅 PASS_THROUGH 模式）
+     */
+    boolean cacheNull() default true;
+
+    /**
+     * 未命中时是否合并同一个 key 的并发查库（仅 PASS_THROUGH 模式）
+     */
+    boolean singleFlight() default true;
+
+    /**
+     * 布隆过滤器的 bean 名称，不为空时先用它拦截一定不存在的 key（仅 PASS_THROUGH 模式）
+     */
+    String bloomFilter() default "";
+
+    enum Mode {
+        /**
+         * 缓存空值应对缓存穿透，未命中时查库
+         */
+        PASS_THROUGH,
+        /**
+         * 逻辑过期应对缓存击穿，过期后返回旧值并异步重建；未命中（未预热，或物理 TTL 到期被删除）时查库写入
+         */
+        LOGICAL_EXPIRE,
+        /**
+         * 逻辑过期 + 概率提前刷新（XFetch）
+         */
+        EARLY_REFRESH
+    }
+}
@@ -0,0 +1,107 @@
+package com.hmdp.aspect;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import javax.annotation.Resource;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+
+import com.hmdp.annotation.CachedEvict;
+import com.hmdp.annotation.CachedQuery;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheInvalidator;
+import com.hmdp.utils.RedisBloomFilter;
+
+import cn.hutool.core.util.StrUtil;
+
+/**
+ * @author hwj
+ * @create: 2024-09-21 20:00
+ * @Description: CachedQuery、CachedEvict 的切面，缓存读写全部交给 CacheClient、CacheInvalidator，
+ *               被注解的方法体只在缓存未命中（或重建）时执行
+ */
+@Aspect
+@Component
+public class CachedQueryAspect {
+
+    private final ExpressionParser parser = new SpelExpressionParser();
+
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+
+    private final ConcurrentHashMap<String, Expression> expressions = new ConcurrentHashMap<>();
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+
+    @Resource
+    private BeanFactory beanFactory;
+
+    @SuppressWarnings("unchecked")
+    @Around("@annotation(cachedQuery)")
+    public Object cachedQuery(ProceedingJoinPoint joinPoint, CachedQuery cachedQuery) {
+        Method method = ((MethodSignature)joinPoint.getSignature()).getMethod();
+        Object id = evaluate(cachedQuery.key(), joinPoint, null);
+        Class<Object> type = (Class<Object>)method.getReturnType();
+        // 查库即执行原方法（逻辑过期模式下可能在重建线程中执行）
+        Function<Object, Object> dbFunc = ignored -> proceed(joinPoint);
+        switch (cachedQuery.mode()) {
+            case LOGICAL_EXPIRE:
+                return cacheClient.queryByIdWithLogicalExpire(id, type, dbFunc, cachedQuery.prefix(),
+                    cachedQuery.ttl(), cachedQuery.unit());
+            case EARLY_REFRESH:
+                return cacheClient.queryByIdWithEarlyRefresh(id, type, dbFunc, cachedQuery.prefix(), cachedQuery.ttl(),
+                    cachedQuery.unit());
+            default:
+                if (StrUtil.isNotEmpty(cachedQuery.bloomFilter())
+                    && !beanFactory.getBean(cachedQuery.bloomFilter(), RedisBloomFilter.class).mightContain(id)) {
+                    return null;
+                }
+                return cacheClient.queryByIdWithPassThrough(id, type, dbFunc, cachedQuery.prefix(), cachedQuery.ttl(),
+                    cachedQuery.unit(), cachedQuery.cacheNull(), cachedQuery.singleFlight());
+        }
+    }
+
+    @AfterReturning(pointcut = "@annotation(cachedEvict)", returning = "result")
+    public void cachedEvict(JoinPoint joinPoint, CachedEvict cachedEvict, Object result) {
+        Object id = evaluate(cachedEvict.key(), joinPoint, result);
+        if (id != null) {
+            cacheInvalidator.invalidate(cacheClient.key(cachedEvict.prefix(), id));
+        }
+    }
+
+    private Object evaluate(String key, JoinPoint joinPoint, Object result) {
+        Method method = ((MethodSignature)joinPoint.getSignature()).getMethod();
+        MethodBasedEvaluationContext context =
+            new MethodBasedEvaluationContext(null, method, joinPoint.getArgs(), parameterNameDiscoverer);
+        context.setVariable("result", result);
+        return expressions.computeIfAbsent(key, parser::parseExpression).getValue(context);
+    }
+
+    private static Object proceed(ProceedingJoinPoint joinPoint) {
+        try {
+            return joinPoint.proceed();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
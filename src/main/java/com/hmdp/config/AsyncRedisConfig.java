@@ -0,0 +1,102 @@
+package com.hmdp.config;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import cn.hutool.core.collection.CollectionUtil;
+import cn.hutool.core.util.StrUtil;
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.resource.ClientResources;
+
+/**
+ * @author hwj
+ * @create: 2024-09-20 20:10
+ * @Description: 异步 Redis 连接（Lettuce 原生客户端，byte[] 编解码），供 AsyncCacheClient 使用。
+ *               Lettuce 的连接是线程安全的，所有请求复用同一条连接（管道化），不需要连接池。
+ *               与 StringRedisTemplate 使用同一份 spring.redis 配置：配置了 cluster.nodes 时连接集群（按 key 路由到对应节点，
+ *               热点 key 副本、秒杀库存分桶都分布在不同节点上），配置了 sentinel 时通过哨兵连接主节点，否则连接单机
+ */
+@Configuration
+public class AsyncRedisConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public AbstractRedisClient asyncRedisClient(RedisProperties redisProperties, ClientResources clientResources) {
+        RedisProperties.Cluster cluster = redisProperties.getCluster();
+        if (cluster != null && CollectionUtil.isNotEmpty(cluster.getNodes())) {
+            List<RedisURI> uris = cluster.getNodes().stream()
+                .map(node -> withCommon(RedisURI.builder().withHost(host(node)).withPort(port(node)), redisProperties)
+                    .build())
+                .collect(Collectors.toList());
+            return RedisClusterClient.create(clientResources, uris);
+        }
+        RedisProperties.Sentinel sentinel = redisProperties.getSentinel();
+        if (sentinel != null && CollectionUtil.isNotEmpty(sentinel.getNodes())) {
+            RedisURI.Builder builder = RedisURI.builder().withSentinelMasterId(sentinel.getMaster());
+            for (String node : sentinel.getNodes()) {
+                if (StrUtil.isNotEmpty(sentinel.getPassword())) {
+                    builder.withSentinel(host(node), port(node), sentinel.getPassword());
+                } else {
+                    builder.withSentinel(host(node), port(node));
+                }
+            }
+            builder.withDatabase(redisProperties.getDatabase());
+            return RedisClient.create(clientResources, withCommon(builder, redisProperties).build());
+        }
+        if (StrUtil.isNotEmpty(redisProperties.getUrl())) {
+            return RedisClient.create(clientResources, RedisURI.create(redisProperties.getUrl()));
+        }
+        RedisURI.Builder builder = RedisURI.builder().withHost(redisProperties.getHost())
+            .withPort(redisProperties.getPort()).withDatabase(redisProperties.getDatabase());
+        return RedisClient.create(clientResources, withCommon(builder, redisProperties).build());
+    }
+
+    @Bean(destroyMethod = "close")
+    public StatefulConnection<byte[], byte[]> asyncRedisConnection(AbstractRedisClient asyncRedisClient) {
+        if (asyncRedisClient instanceof RedisClusterClient) {
+            return ((RedisClusterClient)asyncRedisClient).connect(ByteArrayCodec.INSTANCE);
+        }
+        return ((RedisClient)asyncRedisClient).connect(ByteArrayCodec.INSTANCE);
+    }
+
+    // 单机、哨兵和集群连接的异步命令都实现了该接口（GET、SETEX 等按 key 操作的命令）
+    @Bean
+    @SuppressWarnings("unchecked")
+    public RedisClusterAsyncCommands<byte[], byte[]> asyncRedisCommands(
+        StatefulConnection<byte[], byte[]> asyncRedisConnection) {
+        if (asyncRedisConnection instanceof StatefulRedisClusterConnection) {
+            return ((StatefulRedisClusterConnection<byte[], byte[]>)asyncRedisConnection).async();
+        }
+        return ((StatefulRedisConnection<byte[], byte[]>)asyncRedisConnection).async();
+    }
+
+    private static RedisURI.Builder withCommon(RedisURI.Builder builder, RedisProperties redisProperties) {
+        if (StrUtil.isNotEmpty(redisProperties.getPassword())) {
+            builder.withPassword(redisProperties.getPassword().toCharArray());
+        }
+        if (redisProperties.getTimeout() != null) {
+            builder.withTimeout(redisProperties.getTimeout());
+        }
+        return builder.withSsl(redisProperties.isSsl());
+    }
+
+    // 节点格式为 host:port
+    private static String host(String node) {
+        return StrUtil.subBefore(node, ':', true);
+    }
+
+    private static int port(String node) {
+        return Integer.parseInt(StrUtil.subAfter(node, ':', true));
+    }
+}
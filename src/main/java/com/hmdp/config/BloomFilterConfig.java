@@ -0,0 +1,36 @@
+package com.hmdp.config;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_RELOAD_PERIOD;
+import static com.hmdp.utils.RedisConstants.BLOOM_SHOP_KEY;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import com.hmdp.utils.RedisBloomFilter;
+
+/**
+ * @author hwj
+ * @create: 2024-09-06 23:10
+ * @Description: 布隆过滤器配置
+ */
+@Configuration
+public class BloomFilterConfig {
+
+    @Value("${hmdp.bloom.shop.expected-insertions:1000000}")
+    private long shopExpectedInsertions;
+
+    @Value("${hmdp.bloom.shop.fpp:0.01}")
+    private double shopFpp;
+
+    @Bean
+    public RedisBloomFilter shopBloomFilter(StringRedisTemplate stringRedisTemplate,
+        RedisMessageListenerContainer redisMessageListenerContainer) {
+        RedisBloomFilter bloomFilter =
+            new RedisBloomFilter(BLOOM_SHOP_KEY, shopExpectedInsertions, shopFpp, stringRedisTemplate);
+        bloomFilter.subscribe(redisMessageListenerContainer, BLOOM_RELOAD_PERIOD);
+        return bloomFilter;
+    }
+}
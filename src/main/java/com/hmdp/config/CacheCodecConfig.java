@@ -0,0 +1,49 @@
+package com.hmdp.config;
+
+import javax.annotation.Resource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.CompressingCacheCodec;
+import com.hmdp.utils.JsonCacheCodec;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * @author hwj
+ * @create: 2024-09-10 22:40
+ * @Description: 缓存编解码器配置，hmdp.cache.codec 可选 json（默认）或 binary；
+ *               hmdp.cache.compression 开启后超过阈值的值会用 LZ4 压缩
+ */
+@Configuration
+public class CacheCodecConfig {
+
+    @Value("${hmdp.cache.codec:json}")
+    private String codec;
+
+    @Value("${hmdp.cache.compression.enabled:true}")
+    private boolean compressionEnabled;
+
+    @Value("${hmdp.cache.compression.threshold-bytes:1024}")
+    private int compressionThresholdBytes;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Bean
+    public CacheCodec cacheCodec() {
+        CacheCodec cacheCodec = new JsonCacheCodec();
+        if ("binary".equalsIgnoreCase(codec)) {
+            // 二进制编解码器不认识的类型仍然用 JSON
+            cacheCodec = new BinaryCacheCodec(cacheCodec);
+        }
+        if (compressionEnabled) {
+            cacheCodec = new CompressingCacheCodec(cacheCodec, compressionThresholdBytes, meterRegistry);
+        }
+        return cacheCodec;
+    }
+}
@@ -4,6 +4,8 @@ import java.util.List;
 
 import javax.annotation.Resource;
 
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
@@ -78,8 +80,13 @@ public class BlogController {
     }
 
     @GetMapping("/{id}")
-    public Result queryBlogById(@PathVariable("id") Long id) {
-        return blogService.queryBlogById(id);
+    public ResponseEntity<?> queryBlogById(@PathVariable("id") Long id) {
+        // 缓存命中时直接返回拼接好的 JSON，未命中才走普通查询流程
+        byte[] body = blogService.queryBlogJsonById(id);
+        if (body != null) {
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+        }
+        return ResponseEntity.ok(blogService.queryBlogById(id));
     }
 
     @GetMapping("/of/follow")
@@ -0,0 +1,61 @@
+package com.hmdp.controller;
+
+import javax.annotation.Resource;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.CacheRebuildScheduler;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.SingleFlight;
+
+/**
+ * @author hwj
+ * @create: 2024-09-04 21:03
+ * @Description: 缓存诊断信息
+ */
+@RestController
+@RequestMapping("/cache")
+public class CacheController {
+
+    @Resource
+    private SingleFlight singleFlight;
+
+    @Resource
+    private CacheRebuildScheduler cacheRebuildScheduler;
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    /**
+     * 查询单飞合并的统计数据
+     *
+     * @return 实际加载次数、被合并的请求次数、等待超时次数、正在加载的 key 数量
+     */
+    @GetMapping("/single-flight")
+    public Result singleFlightStats() {
+        return Result.ok(singleFlight.stats());
+    }
+
+    /**
+     * 查询缓存重建调度器的统计数据
+     *
+     * @return 队列长度、已提交、被去重、被拒绝、获取锁失败的次数
+     */
+    @GetMapping("/rebuild")
+    public Result rebuildStats() {
+        return Result.ok(cacheRebuildScheduler.stats());
+    }
+
+    /**
+     * 查询当前的热点 key
+     *
+     * @return 热点 key 及其估算访问次数（按访问次数从高到低排列）
+     */
+    @GetMapping("/hot-keys")
+    public Result hotKeys() {
+        return Result.ok(hotKeyDetector.topKeys());
+    }
+}
@@ -1,8 +1,13 @@
 package com.hmdp.controller;
 
+import java.util.concurrent.CompletionException;
+
 import javax.annotation.Resource;
 
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
@@ -34,8 +39,28 @@ public class ShopController {
      * @return 商铺详情数据
      */
     @GetMapping("/{id}")
-    public Result queryShopById(@PathVariable("id") Long id) {
-        return shopService.queryById(id);
+    public DeferredResult<ResponseEntity<?>> queryShopById(@PathVariable("id") Long id) {
+        // 异步查询：等待 Redis 和数据库期间释放 Tomcat 线程，结果由 Lettuce 或查库线程写回
+        DeferredResult<ResponseEntity<?>> deferredResult = new DeferredResult<>();
+        shopService.queryJsonByIdAsync(id).whenComplete((json, e) -> {
+            if (e != null) {
+                deferredResult.setErrorResult(e instanceof CompletionException ? e.getCause() : e);
+            } else if (json != null) {
+                // 缓存命中：缓存中的 JSON 直接拼进响应体，不经过 Shop 对象
+                deferredResult.setResult(ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                    .body(Result.okJson(json)));
+            } else {
+                // 未命中（或空值、格式不是 JSON）：走普通查询流程
+                shopService.queryByIdAsync(id).whenComplete((result, ex) -> {
+                    if (ex != null) {
+                        deferredResult.setErrorResult(ex instanceof CompletionException ? ex.getCause() : ex);
+                    } else {
+                        deferredResult.setResult(ResponseEntity.ok(result));
+                    }
+                });
+            }
+        });
+        return deferredResult;
     }
 
     /**
@@ -46,10 +71,8 @@ public class ShopController {
      */
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        // 写入数据库并加入布隆过滤器
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -2,11 +2,20 @@ package com.hmdp.controller;
 
 import javax.annotation.Resource;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopTypeSnapshot;
+import com.hmdp.entity.ShopType;
 import com.hmdp.service.IShopTypeService;
 
 /**
@@ -24,10 +33,39 @@ public class ShopTypeController {
     private IShopTypeService typeService;
 
     @GetMapping("list")
-    public Result queryTypeList() {
+    public ResponseEntity<byte[]> queryTypeList(
+        @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
         /*        List<ShopType> typeList = typeService
                 .query().orderByAsc("sort").list();
         return Result.ok(typeList);*/
-        return typeService.queryTypeList();
+        // 直接返回预先序列化好的响应体；客户端带着相同的 ETag 来请求时返回 304，不需要再传输数据
+        ShopTypeSnapshot snapshot = typeService.getSnapshot();
+        if (snapshot.getEtag().equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(snapshot.getEtag()).build();
+        }
+        return ResponseEntity.ok().eTag(snapshot.getEtag()).contentType(MediaType.APPLICATION_JSON)
+            .body(snapshot.getBody());
+    }
+
+    /**
+     * 新增店铺类型
+     *
+     * @param shopType 店铺类型数据
+     * @return 店铺类型id
+     */
+    @PostMapping
+    public Result saveShopType(@RequestBody ShopType shopType) {
+        return typeService.saveShopType(shopType);
+    }
+
+    /**
+     * 更新店铺类型
+     *
+     * @param shopType 店铺类型数据
+     * @return 无
+     */
+    @PutMapping
+    public Result updateShopType(@RequestBody ShopType shopType) {
+        return typeService.updateShopType(shopType);
     }
 }
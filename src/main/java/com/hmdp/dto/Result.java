@@ -4,12 +4,15 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Result {
+    private static final byte[] OK_JSON_PREFIX = "{\"success\":true,\"data\":".getBytes(StandardCharsets.UTF_8);
+
     private Boolean success;
     private String errorMsg;
     private Object data;
@@ -24,6 +27,16 @@ public class Result {
     public static Result ok(List<?> data, Long total){
         return new Result(true, null, data, total);
     }
+    /**
+     * 用已经序列化好的数据 JSON 直接拼出 Result.ok(data) 的响应体，和 Jackson 序列化的结果一致（空字段不输出）
+     */
+    public static byte[] okJson(byte[] dataJson){
+        byte[] body = new byte[OK_JSON_PREFIX.length + dataJson.length + 1];
+        System.arraycopy(OK_JSON_PREFIX, 0, body, 0, OK_JSON_PREFIX.length);
+        System.arraycopy(dataJson, 0, body, OK_JSON_PREFIX.length, dataJson.length);
+        body[body.length - 1] = '}';
+        return body;
+    }
     public static Result fail(String errorMsg){
         return new Result(false, errorMsg, null, null);
     }
@@ -0,0 +1,29 @@
+package com.hmdp.dto;
+
+import java.util.List;
+
+import com.hmdp.entity.ShopType;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 店铺类型列表的不可变快照：数据、预先序列化好的响应体及其 ETag
+ */
+@Getter
+@AllArgsConstructor
+public class ShopTypeSnapshot {
+    /**
+     * 对应 Redis 中 cache:shop-type:version 的值
+     */
+    private final String version;
+    /**
+     * 不可修改的列表
+     */
+    private final List<ShopType> shopTypes;
+    /**
+     * Result 序列化后的 JSON
+     */
+    private final byte[] body;
+    private final String etag;
+}
@@ -0,0 +1,16 @@
+package com.hmdp.mapper;
+
+import com.hmdp.entity.CacheInvalidation;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+
+/**
+ * <p>
+ * 缓存删除失败的重试记录 Mapper 接口
+ * </p>
+ *
+ * @author hwj
+ * @since 2024-09-18
+ */
+public interface CacheInvalidationMapper extends BaseMapper<CacheInvalidation> {
+
+}
@@ -1,5 +1,9 @@
 package com.hmdp.mapper;
 
+import java.util.Collection;
+
+import org.apache.ibatis.annotations.Param;
+
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 
@@ -13,4 +17,10 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface VoucherOrderMapper extends BaseMapper<VoucherOrder> {
 
+    /**
+     * 一条多值 INSERT IGNORE 批量插入订单，违反 (user_id, voucher_id) 唯一索引的订单被忽略
+     *
+     * @return 实际插入的行数
+     */
+    int insertIgnoreBatch(@Param("orders") Collection<VoucherOrder> orders);
 }
@@ -16,6 +16,16 @@ public interface IBlogService extends IService<Blog> {
 
     Result queryBlogById(Long id);
 
+    /**
+     * 缓存命中时直接用缓存中笔记的 JSON 拼出响应体（不反序列化），需要走 queryBlogById 时返回 null
+     */
+    byte[] queryBlogJsonById(Long id);
+
+    /**
+     * 根据id查询笔记（带缓存），没有点赞、作者等信息
+     */
+    Blog getBlogById(Long id);
+
     Result queryHotBlog(Integer current);
 
     Result likeBlog(Long id);
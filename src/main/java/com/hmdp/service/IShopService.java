@@ -1,5 +1,7 @@
 package com.hmdp.service;
 
+import java.util.concurrent.CompletableFuture;
+
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
@@ -16,6 +18,15 @@ public interface IShopService extends IService<Shop> {
 
     Result queryById(Long id);
 
+    CompletableFuture<Result> queryByIdAsync(Long id);
+
+    /**
+     * 缓存命中时直接返回缓存中店铺的 JSON（不反序列化），需要走 queryByIdAsync 时返回 null
+     */
+    CompletableFuture<byte[]> queryJsonByIdAsync(Long id);
+
+    Result saveShop(Shop shop);
+
     Result updateShop(Shop shop);
 
     Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
@@ -2,6 +2,7 @@ package com.hmdp.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopTypeSnapshot;
 import com.hmdp.entity.ShopType;
 
 /**
@@ -15,4 +16,24 @@ import com.hmdp.entity.ShopType;
 public interface IShopTypeService extends IService<ShopType> {
 
     Result queryTypeList();
+
+    /**
+     * 获取店铺类型列表的堆内快照，最多每隔几秒检查一次 Redis 中的版本号
+     */
+    ShopTypeSnapshot getSnapshot();
+
+    /**
+     * 店铺类型变更后调用，所有节点会在下次检查版本号时重新加载
+     */
+    void invalidateTypeList();
+
+    /**
+     * 新增店铺类型，事务提交后递增版本号
+     */
+    Result saveShopType(ShopType shopType);
+
+    /**
+     * 更新店铺类型，事务提交后递增版本号
+     */
+    Result updateShopType(ShopType shopType);
 }
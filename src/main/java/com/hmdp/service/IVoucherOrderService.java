@@ -1,5 +1,7 @@
 package com.hmdp.service;
 
+import java.util.List;
+
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
@@ -19,4 +21,9 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
     Result createVoucherOrder(Long voucherId, Long userId);
 
     void createVoucherOrder(VoucherOrder voucherOrder);
+
+    /**
+     * 批量创建订单（同一个事务）：去重、每个优惠券扣减一次库存、INSERT IGNORE 批量插入（按实际插入的行数扣减库存）
+     */
+    void createVoucherOrders(List<VoucherOrder> voucherOrders);
 }
@@ -1,22 +1,37 @@
 package com.hmdp.service.impl;
 
 import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_TTL;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_TTL;
 import static com.hmdp.utils.RedisConstants.FEED_KEY;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.annotation.Resource;
 
+import org.springframework.aop.framework.AopContext;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.annotation.CachedEvict;
+import com.hmdp.annotation.CachedQuery;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.ScrollResult;
 import com.hmdp.dto.UserDTO;
@@ -27,6 +42,7 @@ import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
 
@@ -55,6 +71,13 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     @Resource
     private IFollowService followService;
 
+    @Resource
+    private CacheClient cacheClient;
+
+    // 与 Spring MVC 序列化响应使用同一个 ObjectMapper
+    @Resource
+    private ObjectMapper objectMapper;
+
     @Override
     public Result likeBlog(Long id) {
         // 获取登录用户
@@ -86,6 +109,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 return Result.fail("取消点赞失败！");
             }
         }
+        // 点赞只改变点赞数量，用最新的值覆盖缓存，不删除缓存（热门笔记不会因为频繁点赞反复失效）
+        cacheClient.refresh(id, this::getById, CACHE_BLOG_KEY, CACHE_BLOG_TTL, TimeUnit.MINUTES);
         return Result.ok();
     }
 
@@ -100,18 +125,15 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
 
         // 解析用户id，并获取用户信息
         List<Long> userIdList = top5.stream().map(Long::valueOf).collect(Collectors.toList());
-        // 根据用户id查询用户 WHERE id IN ( 5 , 1 ) ORDER BY FIELD(id, 5, 1)
-        /* 之所以要这样查是因为如果直接使用 listByIds() 来查询的话，Mybatis-Plus 底层调用的是 MySQL 的 in() 查询，此时
-        返回的结果不会按照传入的 idList 的顺序返回，因而需要手动在后面指定 order by
-        */
-        String idStr = StrUtil.join(",", userIdList);
-        List<UserDTO> userDTOS = userService.query().in("id", userIdList).last("ORDER BY FIELD(id," + idStr + ")")
-            .list().stream().map(user -> BeanUtil.copyProperties(user, UserDTO.class)).collect(Collectors.toList());
+        // 先批量查缓存，未命中的再用 listByIds() 一次性查库，由 queryByIds 负责按传入 idList 的顺序返回
+        List<UserDTO> userDTOS = cacheClient.queryByIds(userIdList, UserDTO.class, this::queryUserDTOByIds,
+            UserDTO::getId, CACHE_USER_KEY, CACHE_USER_TTL, TimeUnit.MINUTES);
 
         return Result.ok(userDTOS);
     }
 
     @Override
+    @CachedEvict(prefix = CACHE_BLOG_KEY, key = "#blog.id")
     public Result saveBlog(Blog blog) {
         // 获取登录用户
         UserDTO user = UserHolder.getUser();
@@ -216,9 +238,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
 
     @Override
     public Result queryBlogById(Long id) {
-        // TODO 优化：把blog数据存到redis里，提升查询速度
-        // 查询 blog 数据
-        Blog blog = getById(id);
+        // 查询 blog 数据（先查缓存，需要通过代理对象调用注解才会生效）
+        Blog blog = ((IBlogService)AopContext.currentProxy()).getBlogById(id);
         if (ObjectUtil.isEmpty(blog)) {
             return Result.fail("笔记不存在！");
         }
@@ -229,6 +250,85 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         return Result.ok(blog);
     }
 
+    @Override
+    public byte[] queryBlogJsonById(Long id) {
+        byte[] blogJson = cacheClient.queryJsonById(id, this::getById, CACHE_BLOG_KEY, CACHE_BLOG_TTL, TimeUnit.MINUTES);
+        if (blogJson == null) {
+            return null;
+        }
+        // 作者信息和当前用户是否点赞不在缓存中，查出来后拼接到缓存的 JSON 末尾
+        Map<String, Object> fields = new LinkedHashMap<>();
+        Long userId = readUserId(blogJson);
+        User user = userId == null ? null : userService.getById(userId);
+        if (user != null) {
+            if (user.getIcon() != null) {
+                fields.put("icon", user.getIcon());
+            }
+            if (user.getNickName() != null) {
+                fields.put("name", user.getNickName());
+            }
+        }
+        UserDTO userDTO = UserHolder.getUser();
+        if (ObjectUtil.isNotEmpty(userDTO)) {
+            Double score = stringRedisTemplate.opsForZSet().score(BLOG_LIKED_KEY + id, userDTO.getId().toString());
+            fields.put("isLike", score != null);
+        }
+        return Result.okJson(appendFields(blogJson, fields));
+    }
+
+    @Override
+    @CachedQuery(prefix = CACHE_BLOG_KEY, key = "#id", ttl = CACHE_BLOG_TTL)
+    public Blog getBlogById(Long id) {
+        return getById(id);
+    }
+
+    private List<UserDTO> queryUserDTOByIds(Collection<Long> ids) {
+        return userService.listByIds(ids).stream().map(user -> BeanUtil.copyProperties(user, UserDTO.class))
+            .collect(Collectors.toList());
+    }
+
+    // 只用流式解析读取顶层的 userId 字段，不创建 Blog 对象
+    private Long readUserId(byte[] blogJson) {
+        try (JsonParser parser = objectMapper.getFactory().createParser(blogJson)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                if ("userId".equals(name)) {
+                    return parser.getValueAsLong();
+                }
+                parser.skipChildren();
+            }
+            return null;
+        } catch (IOException e) {
+            throw new IllegalStateException("解析笔记缓存失败", e);
+        }
+    }
+
+    // 把 fields 序列化后追加到 JSON 对象的末尾：{...} + {"a":1} -> {...,"a":1}
+    private byte[] appendFields(byte[] json, Map<String, Object> fields) {
+        if (fields.isEmpty()) {
+            return json;
+        }
+        byte[] extra;
+        try {
+            extra = objectMapper.writeValueAsBytes(fields);
+        } catch (IOException e) {
+            throw new IllegalStateException("序列化笔记作者信息失败", e);
+        }
+        int end = json.length - 1;
+        while (end > 0 && json[end] != '}') {
+            end--;
+        }
+        byte[] out = new byte[end + extra.length];
+        System.arraycopy(json, 0, out, 0, end);
+        out[end] = ',';
+        System.arraycopy(extra, 1, out, end + 1, extra.length - 1);
+        return out;
+    }
+
     private void checkIsLiked(Blog blog) {
         UserDTO userDTO = UserHolder.getUser();
         if (ObjectUtil.isEmpty(userDTO)) {
@@ -1,8 +1,12 @@
 package com.hmdp.service.impl;
 
+import static com.hmdp.utils.RedisConstants.CACHE_USER_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_TTL;
+
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.annotation.Resource;
@@ -18,6 +22,7 @@ import com.hmdp.entity.Follow;
 import com.hmdp.mapper.FollowMapper;
 import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.UserHolder;
 
 import cn.hutool.core.bean.BeanUtil;
@@ -41,6 +46,9 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
     @Resource
     private IUserService userService;
 
+    @Resource
+    private CacheClient cacheClient;
+
     /*// 关注/取关操作（直接存数据库版）
     @Override
     public Result follow(Long followUserId, Boolean isFollow) {
@@ -130,8 +138,10 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
 
         // 3.根据 id 解析用户信息
         List<Long> ids = commonSet.stream().map(Long::valueOf).collect(Collectors.toList());
-        List<UserDTO> userDTOS = userService.query().in("id", ids).list().stream()
-            .map(user1 -> BeanUtil.copyProperties(user1, UserDTO.class)).collect(Collectors.toList());
+        List<UserDTO> userDTOS = cacheClient.queryByIds(ids, UserDTO.class,
+            idList -> userService.listByIds(idList).stream()
+                .map(user1 -> BeanUtil.copyProperties(user1, UserDTO.class)).collect(Collectors.toList()),
+            UserDTO::getId, CACHE_USER_KEY, CACHE_USER_TTL, TimeUnit.MINUTES);
         return Result.ok(userDTOS);
     }
 }
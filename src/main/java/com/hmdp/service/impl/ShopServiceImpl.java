@@ -2,12 +2,12 @@ package com.hmdp.service.impl;
 
 import static com.hmdp.utils.RedisConstants.*;
 
-import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 
 import org.springframework.data.geo.*;
@@ -16,22 +16,20 @@ import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.annotation.CachedEvict;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
+import com.hmdp.utils.AsyncCacheClient;
 import com.hmdp.utils.CacheClient;
-import com.hmdp.utils.RandomExpireTimeUtil;
-import com.hmdp.utils.RedisData;
+import com.hmdp.utils.RedisBloomFilter;
 import com.hmdp.utils.SystemConstants;
 
-import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.ObjectUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
 
 /**
  * <p>
@@ -50,142 +48,73 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Resource
     private CacheClient cacheClient;
 
-    private ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    @Resource
+    private AsyncCacheClient asyncCacheClient;
 
-    @Override
-    public Result queryById(Long id) {
-        // 缓存穿透
-        // Shop shop = queryByIdWithPassThrough(id);
-        Shop shop = cacheClient.queryByIdWithPassThrough(id, Shop.class, this::getById, CACHE_SHOP_KEY, CACHE_SHOP_TTL,
-            TimeUnit.MINUTES);
+    @Resource
+    private RedisBloomFilter shopBloomFilter;
 
-        /*// 互斥锁解决缓存击穿
-        Shop shop = queryByIdWithMutex(id);*/
+    // 启动时用全量店铺 id 构建布隆过滤器
+    @PostConstruct
+    private void initShopBloomFilter() {
+        List<Object> ids = listObjs(new QueryWrapper<Shop>().select("id"));
+        shopBloomFilter.rebuild(ids);
+    }
 
-        /*// 逻辑过期时间解决缓存击穿
-        // Shop shop = queryByIdWithLogicalExpire(id);
-        Shop shop = cacheClient.queryByIdWithLogicalExpire(id, Shop.class, this::getById, CACHE_SHOP_KEY,
-            CACHE_SHOP_TTL, TimeUnit.MINUTES);*/
+    @Override
+    public Result queryById(Long id) {
+        // 缓存穿透（布隆过滤器拦截不存在的 id；未命中时同一个 key 只会有一个线程查库，兼顾缓存击穿）
+        Shop shop = cacheClient.queryByIdWithPassThrough(id, Shop.class, this::getById, CACHE_SHOP_KEY,
+            CACHE_SHOP_TTL, TimeUnit.MINUTES, shopBloomFilter);
         if (shop == null) {
             return Result.fail("店铺信息不存在！");
         }
         return Result.ok(shop);
     }
 
-    // 缓存穿透版本（缓存空值）
-    public Shop queryByIdWithPassThrough(Long id) {
-        // 1.从Redis里查询
-        String shopCache = stringRedisTemplate.opsForValue().get(CACHE_SHOP_KEY + id);
-        if (StrUtil.isNotEmpty(shopCache)) {
-            Shop shop = JSONUtil.toBean(shopCache, Shop.class);
-            return shop;
-        }
-        // 判断是否是空值（缓存穿透）
-        if (shopCache != null) {
-            return null;
-        }
-
-        // 2.从数据库里查
-        Shop shop = getById(id);
-        if (ObjectUtil.isEmpty(shop)) {
-            // 缓存空值，应对缓存穿透
-            stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, "",
-                RandomExpireTimeUtil.getRandomExpire(CACHE_NULL_TTL), TimeUnit.MINUTES);
-            return null;
-        }
-        // 3.如果从数据库查到则写回Redis
-        stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, JSONUtil.toJsonStr(shop),
-            RandomExpireTimeUtil.getRandomExpire(CACHE_SHOP_TTL), TimeUnit.MINUTES);
-        return shop;
+    @Override
+    public CompletableFuture<Result> queryByIdAsync(Long id) {
+        // 与 queryById 相同的缓存逻辑，但读 Redis 不阻塞当前线程，查库在独立的有界线程池中执行
+        return asyncCacheClient
+            .queryByIdWithPassThrough(id, Shop.class, this::getById, CACHE_SHOP_KEY, CACHE_SHOP_TTL, TimeUnit.MINUTES,
+                shopBloomFilter)
+            .thenApply(shop -> shop == null ? Result.fail("店铺信息不存在！") : Result.ok(shop));
     }
 
-    // 缓存击穿（互斥锁）版本
-    public Shop queryByIdWithMutex(Long id) {
-        // 1.从Redis里查询
-        String shopCache = stringRedisTemplate.opsForValue().get(CACHE_SHOP_KEY + id);
-        if (StrUtil.isNotEmpty(shopCache)) {
-            Shop shop = JSONUtil.toBean(shopCache, Shop.class);
-            return shop;
-        }
-        // 判断是否是空值（缓存穿透）
-        if (shopCache != null) {
-            return null;
+    @Override
+    public CompletableFuture<byte[]> queryJsonByIdAsync(Long id) {
+        if (!shopBloomFilter.mightContain(id)) {
+            return CompletableFuture.completedFuture(null);
         }
-        String lockKey = LOCK_SHOP_KEY + id;
-        Shop shop = null;
-
-        try {
-            // 尝试获取互斥锁
-            if (!tryLock(lockKey)) {
-                // 获取互斥锁失败，休眠一段时间
-                Thread.sleep(50);
-                // 递归调用（获取互斥锁成功后还要再查询缓存，double check，如果存在则无需重建缓存）
-                return queryByIdWithMutex(id);
-            }
+        return asyncCacheClient.queryJsonById(id, this::getById, CACHE_SHOP_KEY, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
 
-            // 获取到互斥锁之后查询数据库
-            // 2.从数据库里查
-            shop = getById(id);
-            // 模拟查询数据库延时
-            Thread.sleep(200);
-            if (ObjectUtil.isEmpty(shop)) {
-                // 缓存空值，应对缓存穿透
-                stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, "",
-                    RandomExpireTimeUtil.getRandomExpire(CACHE_NULL_TTL), TimeUnit.MINUTES);
-                return null;
-            }
-            // 3.如果从数据库查到则写回Redis
-            stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, JSONUtil.toJsonStr(shop),
-                RandomExpireTimeUtil.getRandomExpire(CACHE_SHOP_TTL), TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } finally {
-            // 释放互斥锁
-            unlock(lockKey);
-        }
-        return shop;
+    // 缓存穿透版本（缓存空值）。读写都交给 CacheClient，缓存值由 CacheCodec 编解码（二进制、LZ4 压缩的值也能读出来）
+    public Shop queryByIdWithPassThrough(Long id) {
+        return cacheClient.queryByIdWithPassThrough(id, Shop.class, this::getById, CACHE_SHOP_KEY, CACHE_SHOP_TTL,
+            TimeUnit.MINUTES);
     }
 
-    // 缓存击穿（逻辑过期时间）版本
+    // 缓存击穿（逻辑过期时间）版本，过期后由重建调度器获取互斥锁并异步重建，重建期间返回旧值
     public Shop queryByIdWithLogicalExpire(Long id) {
-        // 1.从Redis里查询
-        String shopCache = stringRedisTemplate.opsForValue().get(CACHE_SHOP_KEY + id);
-        // 未命中则直接返回空
-        if (StrUtil.isEmpty(shopCache)) {
-            return null;
-        }
+        return cacheClient.queryByIdWithLogicalExpire(id, Shop.class, this::getById, CACHE_SHOP_KEY, CACHE_SHOP_TTL,
+            TimeUnit.MINUTES);
+    }
 
-        // 命中则需要先反序列化
-        RedisData redisData = JSONUtil.toBean(shopCache, RedisData.class);
-        JSONObject data = (JSONObject)redisData.getData();
-        Shop shop = JSONUtil.toBean(data, Shop.class);
-        // 判断逻辑缓存是否过期
-        if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
-            // 未过期，直接返回
-            return shop;
-        }
-        // 如果过期，则需要重构缓存
-        // 先获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        if (tryLock(lockKey)) {
-            // 开启独立线程去重构缓存
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    // 重建缓存
-                    savaRedisData(id, 3600L);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    // 释放锁
-                    unlock(lockKey);
-                }
-            });
-        }
-        return shop;
+    @Override
+    public Result saveShop(Shop shop) {
+        // 1.写入数据库
+        save(shop);
+        // 2.加入布隆过滤器，并删除之前可能缓存的空值
+        shopBloomFilter.put(shop.getId());
+        cacheClient.evict(cacheClient.key(CACHE_SHOP_KEY, shop.getId()));
+        // 3.返回店铺id
+        return Result.ok(shop.getId());
     }
 
     @Override
     @Transactional
+    @CachedEvict(prefix = CACHE_SHOP_KEY, key = "#shop.id")
     public Result updateShop(Shop shop) {
         Long id = shop.getId();
         if (id == null) {
@@ -193,8 +122,7 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         }
         // 1.更新数据库
         updateById(shop);
-        // 2.删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
+        // 2.删除缓存由 CachedEvict 完成（事务提交后删除并延迟再删一次，同时广播给其他节点删除 L1 中的旧值）
         return null;
     }
 
@@ -241,33 +169,20 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             geoMap.put(shopIdStr, distance);
         });
 
-        // 5.根据id查询Shop
-        String idStr = StrUtil.join(",", ids);
-        List<Shop> shops = query().in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list();
+        // 5.根据id查询Shop（先批量查缓存，未命中的再一次性查库，结果保持 ids 的顺序）
+        List<Long> shopIds = ids.stream().map(Long::valueOf).collect(Collectors.toList());
+        List<Shop> shops = cacheClient.queryByIds(shopIds, Shop.class, this::listByIds, Shop::getId, CACHE_SHOP_KEY,
+            CACHE_SHOP_TTL, TimeUnit.MINUTES);
         for (Shop shop : shops) {
             shop.setDistance(geoMap.get(shop.getId().toString()));
         }
         return Result.ok(shops);
     }
 
-    private boolean tryLock(String key) {
-        // 用Redis的setnx来作为互斥锁，并设置过期时间作为兜底（防止获取锁的线程崩溃导致锁一直不被释放）
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1",
-            RandomExpireTimeUtil.getRandomExpire(LOCK_SHOP_TTL), TimeUnit.SECONDS);
-        return BooleanUtil.isTrue(flag);
-    }
-
-    private void unlock(String key) {
-        stringRedisTemplate.delete(key);
-    }
-
     // 给要缓存的对象封装成带逻辑过期时间的RedisData，并存到Redis中（针对热点key，所以不考虑查不到数据的情况）
     public void savaRedisData(Long id, Long seconds) {
         Shop shop = getById(id);
-        String key = CACHE_SHOP_KEY + id;
-        RedisData redisData = new RedisData();
-        redisData.setData(shop);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(seconds));
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        // 交给 CacheClient 按当前的编解码器写入，保证和 queryByIdWithLogicalExpire 读取的格式一致
+        cacheClient.setWithLogicalExpire(shop, cacheClient.key(CACHE_SHOP_KEY, id), seconds, TimeUnit.SECONDS);
     }
 }
@@ -1,24 +1,33 @@
 package com.hmdp.service.impl;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 import javax.annotation.Resource;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.DigestUtils;
 
-import com.alibaba.fastjson.JSON;
 import com.baomidou.mybatisplus.core.toolkit.CollectionUtils;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopTypeSnapshot;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.CacheMetrics;
 import com.hmdp.utils.RandomExpireTimeUtil;
 import com.hmdp.utils.RedisConstants;
 
+import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONUtil;
 
 /**
@@ -34,28 +43,131 @@ public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> i
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private CacheMetrics cacheMetrics;
+
+    // 与 Spring MVC 序列化响应使用同一个 ObjectMapper，预先序列化的响应体和直接返回 Result 的结果一致
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Value("${hmdp.cache.shop-type.check-seconds:5}")
+    private long checkSeconds;
+
+    // 堆内快照，整体替换，读取时不加锁
+    private volatile ShopTypeSnapshot snapshot;
+
+    // 上次检查 Redis 版本号的时间
+    private volatile long checkedAt;
+
     @Override
     public Result queryTypeList() {
-        // 1.查询缓存
-        List<String> shopTypeCacheJsonList =
-            stringRedisTemplate.opsForList().range(RedisConstants.CACHE_SHOPTYPE_KEY, 0, -1);
-        if (CollectionUtils.isNotEmpty(shopTypeCacheJsonList)) {
-            // 如果存在则进行类型转换并返回
-            List<ShopType> shopTypeList = shopTypeCacheJsonList.stream()
-                .map(json -> JSON.parseObject(json, ShopType.class)).collect(Collectors.toList());
-            return Result.ok(shopTypeList);
-        }
-
-        // 2.查询数据库
-        List<ShopType> shopTypeList = query().orderByAsc("sort").list();
+        List<ShopType> shopTypeList = getSnapshot().getShopTypes();
         if (CollectionUtils.isEmpty(shopTypeList)) {
             return Result.fail("Shop type is not found!");
         }
-        // 3.写回Redis并设置过期时间
-        shopTypeList.forEach(shopType -> stringRedisTemplate.opsForList().rightPush(RedisConstants.CACHE_SHOPTYPE_KEY,
-            JSONUtil.toJsonStr(shopType)));
-        stringRedisTemplate.expire(RedisConstants.CACHE_SHOPTYPE_KEY,
-            RandomExpireTimeUtil.getRandomExpire(RedisConstants.CACHE_SHOPTYPE_TTL), TimeUnit.HOURS);
         return Result.ok(shopTypeList);
     }
+
+    @Override
+    public ShopTypeSnapshot getSnapshot() {
+        ShopTypeSnapshot current = snapshot;
+        if (current != null && System.currentTimeMillis() - checkedAt < TimeUnit.SECONDS.toMillis(checkSeconds)) {
+            // 距离上次检查不到 checkSeconds 秒，直接使用堆内快照
+            cacheMetrics.hit(RedisConstants.CACHE_SHOPTYPE_KEY);
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current != null && System.currentTimeMillis() - checkedAt < TimeUnit.SECONDS.toMillis(checkSeconds)) {
+                cacheMetrics.hit(RedisConstants.CACHE_SHOPTYPE_KEY);
+                return current;
+            }
+            // 1.检查版本号，没变则继续使用堆内快照；
+            // 没查到店铺类型的失败快照不等版本号变化，最多保留 checkSeconds 秒后重新加载（数据库恢复或数据补齐后自动生效）
+            String version = StrUtil.nullToDefault(
+                stringRedisTemplate.opsForValue().get(RedisConstants.CACHE_SHOPTYPE_VERSION_KEY), "0");
+            if (current == null || CollectionUtils.isEmpty(current.getShopTypes())
+                || !version.equals(current.getVersion())) {
+                current = buildSnapshot(version);
+                snapshot = current;
+            } else {
+                cacheMetrics.hit(RedisConstants.CACHE_SHOPTYPE_KEY);
+            }
+            checkedAt = System.currentTimeMillis();
+            return current;
+        }
+    }
+
+    @Override
+    public void invalidateTypeList() {
+        // 先删除数据再递增版本号，各节点最迟 checkSeconds 秒后发现版本变化并重新加载
+        stringRedisTemplate.delete(RedisConstants.CACHE_SHOPTYPE_KEY);
+        stringRedisTemplate.opsForValue().increment(RedisConstants.CACHE_SHOPTYPE_VERSION_KEY);
+    }
+
+    @Override
+    @Transactional
+    public Result saveShopType(ShopType shopType) {
+        save(shopType);
+        invalidateAfterCommit();
+        return Result.ok(shopType.getId());
+    }
+
+    @Override
+    @Transactional
+    public Result updateShopType(ShopType shopType) {
+        if (shopType.getId() == null) {
+            return Result.fail("店铺类型id不能为空！");
+        }
+        updateById(shopType);
+        invalidateAfterCommit();
+        return Result.ok();
+    }
+
+    // 事务提交后再递增版本号，避免其他节点在提交前按新版本号读到旧数据，直到下一次变更才会更新快照
+    private void invalidateAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidateTypeList();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                invalidateTypeList();
+            }
+        });
+    }
+
+    private ShopTypeSnapshot buildSnapshot(String version) {
+        // 2.版本变化，先从Redis读取整体序列化的列表
+        List<ShopType> shopTypeList;
+        String json = stringRedisTemplate.opsForValue().get(RedisConstants.CACHE_SHOPTYPE_KEY);
+        if (StrUtil.isNotEmpty(json)) {
+            cacheMetrics.hit(RedisConstants.CACHE_SHOPTYPE_KEY);
+            shopTypeList = JSONUtil.toList(json, ShopType.class);
+        } else {
+            // 3.Redis中没有则查询数据库，整个列表用一次 SET 写回（之前逐个 RPUSH，并发未命中时会重复写入）
+            cacheMetrics.miss(RedisConstants.CACHE_SHOPTYPE_KEY);
+            long begin = System.nanoTime();
+            shopTypeList = query().orderByAsc("sort").list();
+            cacheMetrics.recordLoad(RedisConstants.CACHE_SHOPTYPE_KEY, System.nanoTime() - begin);
+            if (CollectionUtils.isNotEmpty(shopTypeList)) {
+                stringRedisTemplate.opsForValue().set(RedisConstants.CACHE_SHOPTYPE_KEY,
+                    JSONUtil.toJsonStr(shopTypeList),
+                    RandomExpireTimeUtil.getRandomExpire(RedisConstants.CACHE_SHOPTYPE_TTL), TimeUnit.HOURS);
+            }
+        }
+        shopTypeList = Collections.unmodifiableList(shopTypeList);
+        // 4.预先序列化响应体，ETag 取响应体的摘要
+        Result result = CollectionUtils.isEmpty(shopTypeList) ? Result.fail("Shop type is not found!")
+            : Result.ok(shopTypeList);
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(result);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("序列化店铺类型列表失败", e);
+        }
+        String etag = "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+        return new ShopTypeSnapshot(version, shopTypeList, body, etag);
+    }
 }
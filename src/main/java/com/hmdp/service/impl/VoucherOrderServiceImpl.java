@@ -1,20 +1,35 @@
 package com.hmdp.service.impl;
 
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM;
+
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.NestedExceptionUtils;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
 import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
@@ -28,11 +43,15 @@ import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.utils.RedisGlobalIdGenerator;
+import com.hmdp.utils.SeckillSoldOutRegistry;
+import com.hmdp.utils.SeckillStockBuckets;
 import com.hmdp.utils.UserHolder;
 
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.collection.CollectionUtil;
+import cn.hutool.core.net.NetUtil;
 import cn.hutool.core.util.ObjectUtil;
+import cn.hutool.core.util.StrUtil;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -60,13 +79,86 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private RedissonClient redissonClient;
 
-    // 异步处理的线程池 (TODO 修改线程池的创建方法)
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+    @Resource
+    private SeckillSoldOutRegistry seckillSoldOutRegistry;
+
+    @Resource
+    private SeckillStockBuckets seckillStockBuckets;
+
+    // XREADGROUP 阻塞等待的时间（秒）
+    private static final long STREAM_BLOCK_SECONDS = 2;
+
+    // 每次最多检查的 pending 消息数
+    private static final long CLAIM_BATCH_SIZE = 100;
+
+    // 每个节点的消费者线程数，吞吐量随线程数和节点数线性扩展
+    @Value("${hmdp.seckill.consumer.threads:4}")
+    private int consumerThreads;
+
+    // 每次 XREADGROUP 最多读取的消息数，大于 1 时整批消息在一个事务内创建订单（批量模式）
+    @Value("${hmdp.seckill.consumer.batch-size:100}")
+    private int batchSize;
+
+    // 消费组名称
+    @Value("${hmdp.seckill.consumer.group:g1}")
+    private String consumerGroup;
+
+    // 消费者名称前缀，默认为 主机名:端口，同一节点的各线程再加上序号，保证整个集群内唯一，并且重启后不变（可以接着处理自己的 pending-list）
+    @Value("${hmdp.seckill.consumer.name-prefix:}")
+    private String consumerNamePrefix;
+
+    @Value("${server.port:8080}")
+    private int serverPort;
+
+    // 其他消费者的消息 pending 超过该时间（秒）未确认（比如节点已下线），由本节点认领后处理
+    @Value("${hmdp.seckill.consumer.claim-idle-seconds:60}")
+    private long claimIdleSeconds;
+
+    // 异步处理秒杀订单的线程池
+    private ExecutorService orderExecutor;
+
+    private volatile boolean running = true;
 
     // bean 初始化之后就开始执行异步任务
     @PostConstruct
     private void init() {
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
+        createGroup();
+        if (StrUtil.isEmpty(consumerNamePrefix)) {
+            consumerNamePrefix = NetUtil.getLocalHostName() + ":" + serverPort;
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        orderExecutor = Executors.newFixedThreadPool(consumerThreads, r -> {
+            Thread thread = new Thread(r, "seckill-order-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 1; i <= consumerThreads; i++) {
+            orderExecutor.submit(new VoucherOrderHandler(consumerNamePrefix + "-" + i));
+        }
+    }
+
+    // 停止拉取新消息，等正在处理的订单完成（未确认的消息留在 pending-list，重启后继续处理）
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        running = false;
+        orderExecutor.shutdown();
+        if (!orderExecutor.awaitTermination(STREAM_BLOCK_SECONDS * 2 + 5, TimeUnit.SECONDS)) {
+            log.warn("订单消费者未能在超时时间内停止");
+            orderExecutor.shutdownNow();
+        }
+    }
+
+    // 启动时自动创建消息队列和消费组（XGROUP CREATE stream.orders g1 0 MKSTREAM），已经存在时忽略
+    private void createGroup() {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>)connection -> connection.streamCommands()
+                .xGroupCreate(SECKILL_ORDER_STREAM.getBytes(StandardCharsets.UTF_8), consumerGroup,
+                    ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            if (!String.valueOf(NestedExceptionUtils.getMostSpecificCause(e).getMessage()).contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
     }
 
     /*// 阻塞队列
@@ -90,32 +182,49 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         }
     }*/
 
-    // 异步处理秒杀任务的线程（做数据库相关的操作）
+    // 异步处理秒杀任务的线程（做数据库相关的操作），每个线程是消费组中的一个消费者
     private class VoucherOrderHandler implements Runnable {
-        // 消息队列名称
-        public static final String QUEUE_NAME = "stream.orders";
+
+        private final Consumer consumer;
+
+        private long lastClaimAt = System.currentTimeMillis();
+
+        private VoucherOrderHandler(String name) {
+            this.consumer = Consumer.from(consumerGroup, name);
+        }
 
         @Override
         public void run() {
-            while (true) {
-                // 消费组名称为 g1
+            // 先处理上次运行时没有确认的消息
+            handlePendingList();
+            while (running) {
                 try {
-                    // 1.获取消息队列中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 2000 STREAMS s1 >
+                    // 按自己的周期认领其他消费者超时未确认的消息，不依赖队列是否空闲（持续有新消息时也会认领）
+                    claimIdleMessages();
+                    // 1.获取消息队列中的订单信息 XREADGROUP GROUP g1 {consumer} COUNT N BLOCK 2000 STREAMS stream.orders >
                     List<MapRecord<String, Object, Object>> messageList = stringRedisTemplate.opsForStream().read(
-                        Consumer.from("g1", "c1"), StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
-                        StreamOffset.create(QUEUE_NAME, ReadOffset.lastConsumed()));
+                        consumer,
+                        StreamReadOptions.empty().count(batchSize).block(Duration.ofSeconds(STREAM_BLOCK_SECONDS)),
+                        StreamOffset.create(SECKILL_ORDER_STREAM, ReadOffset.lastConsumed()));
                     if (CollectionUtil.isEmpty(messageList)) {
                         continue;
                     }
+                    if (messageList.size() > 1) {
+                        handleVoucherOrders(messageList);
+                        continue;
+                    }
                     // 2.解析消息内容
                     MapRecord<String, Object, Object> message = messageList.get(0);
-                    Map<Object, Object> messageValue = message.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(messageValue, new VoucherOrder(), true);
+                    VoucherOrder voucherOrder = toVoucherOrder(message);
                     // 3.创建订单
                     handleVoucherOrder(voucherOrder);
                     // 4.确认消息 XACK
-                    stringRedisTemplate.opsForStream().acknowledge(QUEUE_NAME, "g1", message.getId());
+                    stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM, consumerGroup,
+                        message.getId());
                 } catch (Exception e) {
+                    if (!running) {
+                        break;
+                    }
                     log.error("处理订单异常", e);
                     handlePendingList();
                 }
@@ -123,44 +232,108 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         }
 
         private void handlePendingList() {
-            while (true) {
+            while (running) {
                 try {
-                    // 1.获取pending-list中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 STREAMS s1 0
+                    // 1.获取pending-list中的订单信息 XREADGROUP GROUP g1 {consumer} COUNT 1 STREAMS stream.orders 0
                     List<MapRecord<String, Object, Object>> messageList =
-                        stringRedisTemplate.opsForStream().read(Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1), StreamOffset.create(QUEUE_NAME, ReadOffset.from("0")));
+                        stringRedisTemplate.opsForStream().read(consumer, StreamReadOptions.empty().count(1),
+                            StreamOffset.create(SECKILL_ORDER_STREAM, ReadOffset.from("0")));
                     if (CollectionUtil.isEmpty(messageList)) {
                         break;
                     }
                     // 2.解析消息内容
                     MapRecord<String, Object, Object> message = messageList.get(0);
-                    Map<Object, Object> messageValue = message.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(messageValue, new VoucherOrder(), true);
+                    VoucherOrder voucherOrder = toVoucherOrder(message);
                     // 3.创建订单
                     handleVoucherOrder(voucherOrder);
                     // 4.确认消息 XACK
-                    stringRedisTemplate.opsForStream().acknowledge(QUEUE_NAME, "g1", message.getId());
+                    stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM, consumerGroup,
+                        message.getId());
                 } catch (Exception e) {
                     log.error("处理pending-list订单异常", e);
                     // 休眠一段时间之后 continue（继续尝试处理）
                     try {
                         Thread.sleep(500);
                     } catch (InterruptedException ex) {
-                        throw new RuntimeException(ex);
+                        Thread.currentThread().interrupt();
+                        return;
                     }
                 }
             }
         }
+
+        // 批量处理：一个事务内创建整批订单，一次 XACK 确认全部消息；失败时逐条处理（没确认的消息会进入 pending-list 重试）
+        private void handleVoucherOrders(List<MapRecord<String, Object, Object>> messageList) {
+            List<VoucherOrder> voucherOrders = messageList.stream().map(VoucherOrderServiceImpl::toVoucherOrder)
+                .collect(Collectors.toList());
+            try {
+                proxy.createVoucherOrders(voucherOrders);
+            } catch (Exception e) {
+                log.warn("批量创建订单失败，改为逐条处理，共 {} 条", messageList.size(), e);
+                for (int i = 0; i < messageList.size(); i++) {
+                    handleVoucherOrder(voucherOrders.get(i));
+                    stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM, consumerGroup,
+                        messageList.get(i).getId());
+                }
+                return;
+            }
+            stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM, consumerGroup,
+                messageList.stream().map(MapRecord::getId).toArray(RecordId[]::new));
+        }
+
+        // 每隔 claimIdleSeconds 秒认领一次其他消费者长时间未确认的消息（比如缩容后不再启动的节点），放到自己的 pending-list 中处理；
+        // 每轮循环都会调用，未到周期时只比较一次时间
+        private void claimIdleMessages() {
+            long now = System.currentTimeMillis();
+            if (now - lastClaimAt < TimeUnit.SECONDS.toMillis(claimIdleSeconds)) {
+                return;
+            }
+            lastClaimAt = now;
+            try {
+                Duration minIdle = Duration.ofSeconds(claimIdleSeconds);
+                PendingMessages pending = stringRedisTemplate.opsForStream().pending(SECKILL_ORDER_STREAM,
+                    consumerGroup, Range.unbounded(), CLAIM_BATCH_SIZE);
+                RecordId[] ids = pending.stream()
+                    .filter(message -> !message.getConsumerName().equals(consumer.getName())
+                        && message.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0)
+                    .map(PendingMessage::getId).toArray(RecordId[]::new);
+                if (ids.length == 0) {
+                    return;
+                }
+                // XCLAIM 会再次检查空闲时间，多个消费者同时认领时只有一个能成功
+                RedisStreamCommands.XClaimOptions options = RedisStreamCommands.XClaimOptions.minIdle(minIdle).ids(ids);
+                List<RecordId> claimed = stringRedisTemplate.execute(
+                    (RedisCallback<List<RecordId>>)connection -> connection.streamCommands().xClaimJustId(
+                        SECKILL_ORDER_STREAM.getBytes(StandardCharsets.UTF_8), consumerGroup, consumer.getName(),
+                        options));
+                if (CollectionUtil.isNotEmpty(claimed)) {
+                    log.info("消费者 {} 认领了 {} 条超时未确认的订单消息", consumer.getName(), claimed.size());
+                    handlePendingList();
+                }
+            } catch (Exception e) {
+                log.warn("认领超时未确认的订单消息失败", e);
+            }
+        }
+    }
+
+    private static VoucherOrder toVoucherOrder(MapRecord<String, Object, Object> message) {
+        return BeanUtil.fillBeanWithMap(message.getValue(), new VoucherOrder(), true);
     }
 
-    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    private static final DefaultRedisScript<List<Long>> SECKILL_SCRIPT;
 
     static {
         SECKILL_SCRIPT = new DefaultRedisScript<>();
         SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
-        SECKILL_SCRIPT.setResultType(Long.class);
+        // 脚本返回整数数组
+        @SuppressWarnings("unchecked")
+        Class<List<Long>> resultType = (Class<List<Long>>)(Class<?>)List.class;
+        SECKILL_SCRIPT.setResultType(resultType);
     }
 
+    // 代理对象（事务），消费者线程里拿不到 AopContext，启动时注入（之前只在处理过秒杀请求的节点上才会赋值）
+    @Lazy
+    @Resource
     private IVoucherOrderService proxy;
 
     private void handleVoucherOrder(VoucherOrder voucherOrder) {
@@ -184,28 +357,51 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Override
     public Result seckillVoucher(Long voucherId) {
         // 1.从 Redis查询用户购买资格
-        // 获取用户ID 和 订单 ID
+        // 获取用户ID
         UserDTO userDTO = UserHolder.getUser();
         if (ObjectUtil.isEmpty(userDTO)) {
             // 用户未登录，不做处理
             return Result.fail("用户未登录！");
         }
         Long userId = userDTO.getId();
-        long orderId = redisGlobalIdGenerator.nextId("order");
-        // 调用 lua 脚本判断秒杀库存和校验一人一单（用 REDIS STREAM 版本的消息队列来代替阻塞队列）
-        Long result = stringRedisTemplate.execute(SECKILL_SCRIPT, Collections.emptyList(), voucherId.toString(),
-            userId.toString(), String.valueOf(orderId));
+        // 本节点已知售罄，直接返回，不再访问 Redis
+        if (seckillSoldOutRegistry.isSoldOut(voucherId)) {
+            return Result.fail("库存不足！");
+        }
+        // 结果为 [0, 订单 id]、[1]（库存不足）或 [2]（重复下单），订单 id 只在下单成功时生成
+        List<Long> result;
+        int buckets = seckillStockBuckets.bucketCount(voucherId);
+        if (buckets > 1) {
+            // 库存分桶的券：按用户所属的桶判断库存和一人一单
+            result = seckillStockBuckets.seckill(voucherId, buckets, userId);
+        } else {
+            result = seckillByScript(voucherId, userId);
+        }
         // 根据返回结果进行判断
-        int r = result.intValue();
+        int r = result.get(0).intValue();
+        if (r == 1) {
+            seckillSoldOutRegistry.markSoldOut(voucherId);
+        }
         if (r != 0) {
             return Result.fail(r == 1 ? "库存不足！" : "用户不能重复下单！");
         }
 
-        // 获取代理对象并存储到全局变量中
-        proxy = (IVoucherOrderService)AopContext.currentProxy();
-
         // 返回订单 id
-        return Result.ok(orderId);
+        return Result.ok(result.get(1));
+    }
+
+    // 调用 lua 脚本判断秒杀库存和校验一人一单（用 REDIS STREAM 版本的消息队列来代替阻塞队列），
+    // 下单成功时在脚本中自增序列号并生成订单 id，一次 EVALSHA 就能得到结果和订单 id
+    private List<Long> seckillByScript(Long voucherId, Long userId) {
+        LocalDateTime now = LocalDateTime.now();
+        long idBase = redisGlobalIdGenerator.timestampBits(now);
+        List<Long> result = stringRedisTemplate.execute(SECKILL_SCRIPT, Collections.emptyList(), voucherId.toString(),
+            userId.toString(), redisGlobalIdGenerator.sequenceKey("order", now), String.valueOf(idBase));
+        if (result.get(0) != 0) {
+            return result;
+        }
+        // 与脚本中的计算方式相同：时间戳部分 | 序列号
+        return Arrays.asList(0L, idBase | result.get(1));
     }
 
     // @Override
@@ -336,6 +532,46 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         return Result.ok(orderId);
     }
 
+    @Override
+    @Transactional
+    public void createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        // 1.内存中按（用户，优惠券）去重，同一条消息被重复投递时只保留一条
+        Map<String, VoucherOrder> orders = distinctOrders(voucherOrders);
+        // 2.按优惠券分组，每组先用一条 UPDATE 预扣整组的数量（库存不够整批扣减时回滚，由调用方逐条处理），
+        //   再用一条 INSERT IGNORE 插入整组订单。一人一单由 (user_id, voucher_id) 唯一索引保证：同一条消息被两个消费者
+        //   同时处理（重新投递、XCLAIM）时，已经存在的订单被忽略，按实际插入的行数退回多扣的库存
+        Map<Long, List<VoucherOrder>> groups = orders.values().stream()
+            .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, LinkedHashMap::new, Collectors.toList()));
+        for (Map.Entry<Long, List<VoucherOrder>> entry : groups.entrySet()) {
+            Long voucherId = entry.getKey();
+            int size = entry.getValue().size();
+            boolean success = seckillVoucherService.update().setSql("stock = stock - " + size)
+                .eq("voucher_id", voucherId).ge("stock", size).update();
+            if (!success) {
+                throw new IllegalStateException("优惠券库存不足，无法批量扣减：" + voucherId);
+            }
+            int inserted = baseMapper.insertIgnoreBatch(entry.getValue());
+            if (inserted < size) {
+                log.error("一个用户只能下一次单！voucherId：{}，忽略重复订单 {} 条", voucherId, size - inserted);
+                seckillVoucherService.update().setSql("stock = stock + " + (size - inserted))
+                    .eq("voucher_id", voucherId).update();
+            }
+        }
+    }
+
+    // 按（用户，优惠券）去重，保留每个组合第一次出现的订单，顺序不变
+    static Map<String, VoucherOrder> distinctOrders(List<VoucherOrder> voucherOrders) {
+        Map<String, VoucherOrder> orders = new LinkedHashMap<>();
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            orders.putIfAbsent(orderKey(voucherOrder.getUserId(), voucherOrder.getVoucherId()), voucherOrder);
+        }
+        return orders;
+    }
+
+    private static String orderKey(Long userId, Long voucherId) {
+        return userId + ":" + voucherId;
+    }
+
     @Override
     @Transactional
     public void createVoucherOrder(VoucherOrder voucherOrder) {
@@ -1,12 +1,9 @@
 package com.hmdp.service.impl;
 
-import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
-
 import java.util.List;
 
 import javax.annotation.Resource;
 
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -17,6 +14,7 @@ import com.hmdp.entity.Voucher;
 import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.SeckillStockBuckets;
 
 /**
  * <p>
@@ -33,7 +31,7 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     private ISeckillVoucherService seckillVoucherService;
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private SeckillStockBuckets seckillStockBuckets;
 
     @Override
     public Result queryVoucherOfShop(Long shopId) {
@@ -55,7 +53,7 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
-        // 保存秒杀券库存到 Redis
-        stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString());
+        // 保存秒杀券库存到 Redis（按配置拆分到多个桶），并清除各节点的售罄标记
+        seckillStockBuckets.setStock(voucher.getId(), voucher.getStock());
     }
 }
@@ -0,0 +1,294 @@
+package com.hmdp.utils;
+
+import static com.hmdp.utils.RedisConstants.CACHE_NULL_TTL;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import cn.hutool.core.util.ObjectUtil;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author hwj
+ * @create: 2024-09-20 20:30
+ * @Description: CacheClient 的异步版本：读写 Redis 用 Lettuce 异步命令，不占用 Tomcat 线程；
+ *               未命中时在独立的有界线程池中查库（队列满时直接失败，不会无限堆积）。
+ *               缓存格式、L1、空值、逻辑过期、热点统计和重建调度都与 CacheClient 相同，两者可以混用。
+ *               Redis 命令完成后的回调运行在 Lettuce 的事件循环线程上，回调里不能有阻塞操作：
+ *               查库交给 dbExecutor，重建只向 CacheRebuildScheduler 入队（分布式锁由重建线程获取）
+ */
+@Slf4j
+@Component
+public class AsyncCacheClient {
+
+    private static final byte[] EMPTY_VALUE = new byte[0];
+
+    // 单机、哨兵或集群连接的异步命令（由 AsyncRedisConfig 按 spring.redis 配置创建）
+    @Resource
+    private RedisClusterAsyncCommands<byte[], byte[]> asyncRedisCommands;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private CacheCodec cacheCodec;
+
+    @Resource
+    private CacheMetrics cacheMetrics;
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    @Resource
+    private CacheTtlPolicy cacheTtlPolicy;
+
+    @Value("${hmdp.cache.async.db-threads:16}")
+    private int dbThreads;
+
+    @Value("${hmdp.cache.async.db-queue-capacity:1000}")
+    private int dbQueueCapacity;
+
+    private ThreadPoolExecutor dbExecutor;
+
+    // 正在查库的 key，同一个 key 的并发请求复用同一个 future
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        dbExecutor = new ThreadPoolExecutor(dbThreads, dbThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(dbQueueCapacity), r -> {
+                Thread thread = new Thread(r, "cache-async-db-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    @PreDestroy
+    private void destroy() {
+        dbExecutor.shutdown();
+    }
+
+    /**
+     * 缓存穿透版本（缓存空值）
+     *
+     * @return 查询结果，不存在时为 null；查库线程池已满时以 RejectedExecutionException 结束
+     */
+    public <R, ID> CompletableFuture<R> queryByIdWithPassThrough(ID id, Class<R> type, Function<ID, R> dbGetByIdFunc,
+        String cachePrefix, Long time, TimeUnit unit) {
+        String key = cacheClient.key(cachePrefix, id);
+        boolean hot = hotKeyDetector.record(key);
+        // 1.先查 L1
+        byte[] local = cacheClient.getLocal(key);
+        if (local != null) {
+            return completeFromCache(id, type, dbGetByIdFunc, cachePrefix, time, unit, local, hot);
+        }
+        // 2.异步查 Redis
+        return get(key).thenCompose(value -> {
+            if (value != null) {
+                cacheClient.putLocal(key, value);
+            }
+            return completeFromCache(id, type, dbGetByIdFunc, cachePrefix, time, unit, value, hot);
+        });
+    }
+
+    // 缓存穿透版本（先用布隆过滤器拦截一定不存在的 id）
+    public <R, ID> CompletableFuture<R> queryByIdWithPassThrough(ID id, Class<R> type, Function<ID, R> dbGetByIdFunc,
+        String cachePrefix, Long time, TimeUnit unit, RedisBloomFilter bloomFilter) {
+        if (!bloomFilter.mightContain(id)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return queryByIdWithPassThrough(id, type, dbGetByIdFunc, cachePrefix, time, unit);
+    }
+
+    /**
+     * 直接返回缓存中数据的 JSON，不反序列化成对象（规则同 CacheClient#queryJsonById）
+     *
+     * @return 数据的 JSON，需要走普通查询流程时为 null
+     */
+    public <R, ID> CompletableFuture<byte[]> queryJsonById(ID id, Function<ID, R> dbGetByIdFunc, String cachePrefix,
+        Long time, TimeUnit unit) {
+        String key = cacheClient.key(cachePrefix, id);
+        byte[] local = cacheClient.getLocal(key);
+        if (local != null) {
+            return CompletableFuture
+                .completedFuture(cacheClient.toJson(id, dbGetByIdFunc, cachePrefix, time, unit, local));
+        }
+        return get(key).thenApply(value -> {
+            if (value != null) {
+                cacheClient.putLocal(key, value);
+            }
+            return cacheClient.toJson(id, dbGetByIdFunc, cachePrefix, time, unit, value);
+        });
+    }
+
+    /**
+     * 缓存击穿（逻辑过期时间）版本：已过期返回旧值并提交重建，未命中时查库并按逻辑过期格式写入
+     */
+    public <R, ID> CompletableFuture<R> queryByIdWithLogicalExpire(ID id, Class<R> type,
+        Function<ID, R> dbGetByIdFunc, String cachePrefix, Long time, TimeUnit unit) {
+        String key = cacheClient.key(cachePrefix, id);
+        hotKeyDetector.record(key);
+        byte[] local = cacheClient.getLocal(key);
+        CompletableFuture<byte[]> future =
+            local != null ? CompletableFuture.completedFuture(local) : get(key);
+        return future.thenCompose(value -> {
+            if (value == null) {
+                cacheMetrics.miss(cachePrefix);
+                return load(id, dbGetByIdFunc, cachePrefix, time, unit, true);
+            }
+            if (value.length == 0) {
+                // 空值（缓存穿透）
+                cacheMetrics.nullHit(cachePrefix);
+                return CompletableFuture.completedFuture(null);
+            }
+            RedisData redisData = cacheClient.decodeRedisData(key, value, type);
+            if (redisData == null) {
+                cacheMetrics.miss(cachePrefix);
+                return CompletableFuture.completedFuture(null);
+            }
+            cacheMetrics.hit(cachePrefix);
+            if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+                cacheClient.putLocal(key, value);
+            } else {
+                // 已过期，返回旧值，由重建调度器异步重建
+                cacheClient.submitRebuild(id, dbGetByIdFunc, cachePrefix, time, unit,
+                    CacheClient.REBUILD_PRIORITY_EXPIRED);
+            }
+            return CompletableFuture.completedFuture(type.cast(redisData.getData()));
+        });
+    }
+
+    // 与 CacheClient#queryByIdWithPassThrough 的规则相同：逻辑过期格式的热点 key 过期后返回旧值并异步重建，
+    // 已经不是热点的过期值当作未命中；普通格式的热点 key 提交重建，提升为逻辑过期格式
+    private <R, ID> CompletableFuture<R> completeFromCache(ID id, Class<R> type, Function<ID, R> dbGetByIdFunc,
+        String cachePrefix, Long time, TimeUnit unit, byte[] value, boolean hot) {
+        String key = cacheClient.key(cachePrefix, id);
+        if (value != null && value.length == 0) {
+            // 空值（缓存穿透）
+            cacheMetrics.nullHit(cachePrefix);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (value != null) {
+            if (cacheClient.isRedisData(key, value)) {
+                RedisData redisData = cacheClient.decodeRedisData(key, value, type);
+                if (redisData != null) {
+                    boolean expired = !redisData.getExpireTime().isAfter(LocalDateTime.now());
+                    if (!expired || hot) {
+                        if (expired) {
+                            // 热点 key 过期后先返回旧值，异步重建
+                            cacheClient.invalidateLocal(key);
+                            cacheClient.submitRebuild(id, dbGetByIdFunc, cachePrefix, time, unit,
+                                CacheClient.REBUILD_PRIORITY_EXPIRED);
+                        }
+                        cacheMetrics.hit(cachePrefix);
+                        return CompletableFuture.completedFuture(type.cast(redisData.getData()));
+                    }
+                    // 已经不是热点了，当作未命中，重新查库后按普通格式写回（降级）
+                }
+            } else {
+                R r = cacheClient.decode(key, value, type);
+                if (r != null) {
+                    if (hot) {
+                        // 热点 key 提升为逻辑过期格式
+                        cacheClient.submitRebuild(id, dbGetByIdFunc, cachePrefix, time, unit,
+                            CacheClient.REBUILD_PRIORITY_PROMOTE);
+                    }
+                    cacheMetrics.hit(cachePrefix);
+                    return CompletableFuture.completedFuture(r);
+                }
+            }
+        }
+        cacheMetrics.miss(cachePrefix);
+        return load(id, dbGetByIdFunc, cachePrefix, time, unit, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R, ID> CompletableFuture<R> load(ID id, Function<ID, R> dbGetByIdFunc, String cachePrefix, Long time,
+        TimeUnit unit, boolean logicalExpire) {
+        String key = cacheClient.key(cachePrefix, id);
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return (CompletableFuture<R>)existing;
+        }
+        try {
+            dbExecutor.execute(() -> {
+                try {
+                    long begin = System.nanoTime();
+                    R r = dbGetByIdFunc.apply(id);
+                    cacheMetrics.recordLoad(cachePrefix, System.nanoTime() - begin);
+                    write(key, r, time, unit, logicalExpire);
+                    future.complete(r);
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(key, future);
+                }
+            });
+        } catch (Exception e) {
+            // 查库线程池已满
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+        }
+        return (CompletableFuture<R>)future;
+    }
+
+    // 写回 Redis（不等待结果），查不到时缓存空值；逻辑过期格式的物理 TTL 与 CacheClient 相同
+    private void write(String key, Object r, Long time, TimeUnit unit, boolean logicalExpire) {
+        byte[] value;
+        long seconds;
+        if (ObjectUtil.isEmpty(r)) {
+            value = EMPTY_VALUE;
+            seconds = TimeUnit.MINUTES.toSeconds(RandomExpireTimeUtil.getRandomExpire(CACHE_NULL_TTL));
+        } else if (logicalExpire) {
+            RedisData redisData = new RedisData();
+            redisData.setData(r);
+            redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
+            value = cacheCodec.encodeRedisData(redisData);
+            seconds = unit.toSeconds(time) * CacheClient.HOT_KEY_PHYSICAL_TTL_FACTOR;
+        } else {
+            value = cacheCodec.encode(r);
+            seconds = cacheTtlPolicy.ttlSeconds(key, time, unit);
+        }
+        // 热点 key 同时写入所有副本
+        for (String k : cacheClient.writeKeys(key)) {
+            asyncRedisCommands.setex(raw(k), seconds, value).whenComplete((reply, e) -> {
+                if (e != null) {
+                    log.warn("异步写入缓存失败，key：{}", k, e);
+                }
+            });
+        }
+        cacheClient.putLocal(key, value);
+    }
+
+    // 热点 key 随机读取主 key 或一个副本，副本不存在时再读主 key
+    private CompletableFuture<byte[]> get(String key) {
+        String readKey = cacheClient.readKey(key);
+        CompletableFuture<byte[]> future = asyncRedisCommands.get(raw(readKey)).toCompletableFuture();
+        if (readKey.equals(key)) {
+            return future;
+        }
+        return future.thenCompose(value -> value != null ? CompletableFuture.completedFuture(value)
+            : asyncRedisCommands.get(raw(key)).toCompletableFuture());
+    }
+
+    private static byte[] raw(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
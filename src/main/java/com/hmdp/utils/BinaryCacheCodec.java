@@ -0,0 +1,383 @@
+package com.hmdp.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+
+/**
+ * @author hwj
+ * @create: 2024-09-10 21:30
+ * @Description: 紧凑的二进制编解码。针对 Shop、Blog、ShopType、UserDTO 预先定义好字段顺序（schema），
+ *               只写字段值不写字段名，整数用变长编码；其他类型仍然退回 JSON。
+ *               解码时根据首字节判断格式，因此切换编解码器后新旧两种格式的缓存可以共存
+ */
+public class BinaryCacheCodec implements CacheCodec {
+
+    // 首字节标记，JSON 文本的首字节都是 ASCII（< 0x80），不会和它们冲突
+    static final byte MAGIC_VALUE = (byte)0x81;
+    static final byte MAGIC_REDIS_DATA = (byte)0x82;
+
+    private final CacheCodec fallback;
+
+    private final Map<Class<?>, Schema<?>> schemasByType = new HashMap<>();
+
+    private final Schema<?>[] schemasById = new Schema<?>[16];
+
+    public BinaryCacheCodec(CacheCodec fallback) {
+        this.fallback = fallback;
+        // 注意：schema id 和字段顺序一旦上线就不能修改，新增字段只能追加在末尾
+        register(new Schema<>(1, Shop.class, Shop::new)
+            .longField(Shop::getId, Shop::setId)
+            .stringField(Shop::getName, Shop::setName)
+            .longField(Shop::getTypeId, Shop::setTypeId)
+            .stringField(Shop::getImages, Shop::setImages)
+            .stringField(Shop::getArea, Shop::setArea)
+            .stringField(Shop::getAddress, Shop::setAddress)
+            .doubleField(Shop::getX, Shop::setX)
+            .doubleField(Shop::getY, Shop::setY)
+            .longField(Shop::getAvgPrice, Shop::setAvgPrice)
+            .intField(Shop::getSold, Shop::setSold)
+            .intField(Shop::getComments, Shop::setComments)
+            .intField(Shop::getScore, Shop::setScore)
+            .stringField(Shop::getOpenHours, Shop::setOpenHours)
+            .dateTimeField(Shop::getCreateTime, Shop::setCreateTime)
+            .dateTimeField(Shop::getUpdateTime, Shop::setUpdateTime)
+            .doubleField(Shop::getDistance, Shop::setDistance));
+        register(new Schema<>(2, Blog.class, Blog::new)
+            .longField(Blog::getId, Blog::setId)
+            .longField(Blog::getShopId, Blog::setShopId)
+            .longField(Blog::getUserId, Blog::setUserId)
+            .stringField(Blog::getIcon, Blog::setIcon)
+            .stringField(Blog::getName, Blog::setName)
+            .boolField(Blog::getIsLike, Blog::setIsLike)
+            .stringField(Blog::getTitle, Blog::setTitle)
+            .stringField(Blog::getImages, Blog::setImages)
+            .stringField(Blog::getContent, Blog::setContent)
+            .intField(Blog::getLiked, Blog::setLiked)
+            .intField(Blog::getComments, Blog::setComments)
+            .dateTimeField(Blog::getCreateTime, Blog::setCreateTime)
+            .dateTimeField(Blog::getUpdateTime, Blog::setUpdateTime));
+        register(new Schema<>(3, ShopType.class, ShopType::new)
+            .longField(ShopType::getId, ShopType::setId)
+            .stringField(ShopType::getName, ShopType::setName)
+            .stringField(ShopType::getIcon, ShopType::setIcon)
+            .intField(ShopType::getSort, ShopType::setSort)
+            .dateTimeField(ShopType::getCreateTime, ShopType::setCreateTime)
+            .dateTimeField(ShopType::getUpdateTime, ShopType::setUpdateTime));
+        register(new Schema<>(4, UserDTO.class, UserDTO::new)
+            .longField(UserDTO::getId, UserDTO::setId)
+            .stringField(UserDTO::getNickName, UserDTO::setNickName)
+            .stringField(UserDTO::getIcon, UserDTO::setIcon));
+    }
+
+    private void register(Schema<?> schema) {
+        schemasByType.put(schema.type, schema);
+        schemasById[schema.id] = schema;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        Schema<?> schema = value == null ? null : schemasByType.get(value.getClass());
+        if (schema == null) {
+            return fallback.encode(value);
+        }
+        Output out = new Output(64);
+        out.writeByte(MAGIC_VALUE);
+        schema.write(value, out);
+        return out.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        if (bytes[0] != MAGIC_VALUE) {
+            return fallback.decode(bytes, type);
+        }
+        Input in = new Input(bytes, 1);
+        return type.cast(readSchema(in));
+    }
+
+    @Override
+    public byte[] encodeRedisData(RedisData redisData) {
+        Object data = redisData.getData();
+        Schema<?> schema = data == null ? null : schemasByType.get(data.getClass());
+        if (schema == null || redisData.getExpireTime() == null) {
+            return fallback.encodeRedisData(redisData);
+        }
+        Output out = new Output(72);
+        out.writeByte(MAGIC_REDIS_DATA);
+        out.writeDateTime(redisData.getExpireTime());
+        // 重建耗时，没有记录时写 0
+        out.writeVarLong(redisData.getRebuildCost() == null ? 0 : redisData.getRebuildCost());
+        schema.write(data, out);
+        return out.toByteArray();
+    }
+
+    @Override
+    public RedisData decodeRedisData(byte[] bytes, Class<?> type) {
+        if (bytes[0] != MAGIC_REDIS_DATA) {
+            return fallback.decodeRedisData(bytes, type);
+        }
+        Input in = new Input(bytes, 1);
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(in.readDateTime());
+        long rebuildCost = in.readVarLong();
+        redisData.setRebuildCost(rebuildCost == 0 ? null : rebuildCost);
+        redisData.setData(type.cast(readSchema(in)));
+        return redisData;
+    }
+
+    @Override
+    public boolean isRedisData(byte[] bytes) {
+        if (bytes[0] == MAGIC_REDIS_DATA) {
+            return true;
+        }
+        return bytes[0] != MAGIC_VALUE && fallback.isRedisData(bytes);
+    }
+
+    @Override
+    public RedisData toJson(byte[] bytes) {
+        // 二进制格式没有现成的 JSON，交给调用方按普通流程解码
+        if (bytes[0] == MAGIC_VALUE || bytes[0] == MAGIC_REDIS_DATA) {
+            return null;
+        }
+        return fallback.toJson(bytes);
+    }
+
+    private Object readSchema(Input in) {
+        int id = in.readByte();
+        Schema<?> schema = id >= 0 && id < schemasById.length ? schemasById[id] : null;
+        if (schema == null) {
+            throw new IllegalStateException("未知的缓存 schema：" + id);
+        }
+        return schema.read(in);
+    }
+
+    private interface FieldCodec<T> {
+        boolean isPresent(T bean);
+
+        void write(T bean, Output out);
+
+        void read(T bean, Input in);
+    }
+
+    private static class Schema<T> {
+        private final int id;
+        private final Class<T> type;
+        private final Supplier<T> constructor;
+        private final List<FieldCodec<T>> fields = new ArrayList<>();
+
+        private Schema(int id, Class<T> type, Supplier<T> constructor) {
+            this.id = id;
+            this.type = type;
+            this.constructor = constructor;
+        }
+
+        private <V> Schema<T> field(Function<T, V> getter, BiConsumer<T, V> setter, BiConsumer<Output, V> writer,
+            Function<Input, V> reader) {
+            fields.add(new FieldCodec<T>() {
+                @Override
+                public boolean isPresent(T bean) {
+                    return getter.apply(bean) != null;
+                }
+
+                @Override
+                public void write(T bean, Output out) {
+                    writer.accept(out, getter.apply(bean));
+                }
+
+                @Override
+                public void read(T bean, Input in) {
+                    setter.accept(bean, reader.apply(in));
+                }
+            });
+            return this;
+        }
+
+        private Schema<T> longField(Function<T, Long> getter, BiConsumer<T, Long> setter) {
+            return field(getter, setter, Output::writeVarLong, Input::readVarLong);
+        }
+
+        private Schema<T> intField(Function<T, Integer> getter, BiConsumer<T, Integer> setter) {
+            return field(getter, setter, (out, v) -> out.writeVarLong(v), in -> (int)in.readVarLong());
+        }
+
+        private Schema<T> doubleField(Function<T, Double> getter, BiConsumer<T, Double> setter) {
+            return field(getter, setter, Output::writeDouble, Input::readDouble);
+        }
+
+        private Schema<T> boolField(Function<T, Boolean> getter, BiConsumer<T, Boolean> setter) {
+            return field(getter, setter, (out, v) -> out.writeByte((byte)(v ? 1 : 0)), in -> in.readByte() == 1);
+        }
+
+        private Schema<T> stringField(Function<T, String> getter, BiConsumer<T, String> setter) {
+            return field(getter, setter, Output::writeString, Input::readString);
+        }
+
+        private Schema<T> dateTimeField(Function<T, LocalDateTime> getter, BiConsumer<T, LocalDateTime> setter) {
+            return field(getter, setter, Output::writeDateTime, Input::readDateTime);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void write(Object value, Output out) {
+            T bean = (T)value;
+            out.writeByte((byte)id);
+            // 先写非空字段位图（字段数不超过 64），为 null 的字段不占任何空间
+            long presence = 0;
+            for (int i = 0; i < fields.size(); i++) {
+                if (fields.get(i).isPresent(bean)) {
+                    presence |= 1L << i;
+                }
+            }
+            out.writeUnsignedVarLong(presence);
+            for (int i = 0; i < fields.size(); i++) {
+                if ((presence & (1L << i)) != 0) {
+                    fields.get(i).write(bean, out);
+                }
+            }
+        }
+
+        private T read(Input in) {
+            T bean = constructor.get();
+            long presence = in.readUnsignedVarLong();
+            for (int i = 0; i < fields.size(); i++) {
+                if ((presence & (1L << i)) != 0) {
+                    fields.get(i).read(bean, in);
+                }
+            }
+            return bean;
+        }
+    }
+
+    private static class Output {
+        private byte[] buf;
+        private int pos;
+
+        private Output(int capacity) {
+            this.buf = new byte[capacity];
+        }
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + n));
+            }
+        }
+
+        private void writeByte(byte b) {
+            ensure(1);
+            buf[pos++] = b;
+        }
+
+        // zigzag + 变长编码，小整数只占 1~2 个字节
+        private void writeVarLong(long v) {
+            writeUnsignedVarLong((v << 1) ^ (v >> 63));
+        }
+
+        private void writeUnsignedVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte)((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte)v;
+        }
+
+        private void writeDouble(double v) {
+            ensure(8);
+            writeFixedLong(pos, Double.doubleToRawLongBits(v));
+            pos += 8;
+        }
+
+        private void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        private void writeDateTime(LocalDateTime time) {
+            writeVarLong(time.toEpochSecond(ZoneOffset.UTC));
+            writeVarLong(time.getNano());
+        }
+
+        private void writeFixedLong(int at, long v) {
+            for (int i = 0; i < 8; i++) {
+                buf[at + i] = (byte)(v >>> (i * 8));
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    private static class Input {
+        private final byte[] buf;
+        private int pos;
+
+        private Input(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        private byte readByte() {
+            return buf[pos++];
+        }
+
+        private long readVarLong() {
+            long zz = readUnsignedVarLong();
+            return (zz >>> 1) ^ -(zz & 1);
+        }
+
+        private long readUnsignedVarLong() {
+            long v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf[pos++];
+                v |= (long)(b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return v;
+        }
+
+        private long readLong() {
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v |= (buf[pos + i] & 0xFFL) << (i * 8);
+            }
+            pos += 8;
+            return v;
+        }
+
+        private double readDouble() {
+            return Double.longBitsToDouble(readLong());
+        }
+
+        private String readString() {
+            int len = (int)readVarLong();
+            String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            return s;
+        }
+
+        private LocalDateTime readDateTime() {
+            long seconds = readVarLong();
+            int nanos = (int)readVarLong();
+            return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+        }
+    }
+}
@@ -2,22 +2,42 @@ package com.hmdp.utils;
 
 import static com.hmdp.utils.RedisConstants.*;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
-import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.collection.CollectionUtil;
 import cn.hutool.core.util.ObjectUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -31,45 +51,439 @@ public class CacheClient {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
-    // TODO 修改线程池用法
-    private ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Resource
+    private SingleFlight singleFlight;
+
+    @Resource
+    private CacheCodec cacheCodec;
+
+    @Resource
+    private CacheRebuildScheduler cacheRebuildScheduler;
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    @Resource
+    private CacheTtlPolicy cacheTtlPolicy;
+
+    @Resource
+    private CacheMetrics cacheMetrics;
+
+    // 空值标记，用于应对缓存穿透
+    private static final byte[] EMPTY_VALUE = new byte[0];
+
+    // 已经逻辑过期（正在返回旧值）的 key 优先于提前刷新的 key 重建
+    static final int REBUILD_PRIORITY_EXPIRED = 10;
+    static final int REBUILD_PRIORITY_PROMOTE = 5;
+    private static final int REBUILD_PRIORITY_EARLY = 0;
+
+    // 热点 key 副本的后缀，不能带 hash tag，Redis Cluster 中各副本才会落到不同的槽（节点）
+    private static final String REPLICA_SUFFIX = "#r";
+
+    // 逻辑过期格式的物理 TTL 为逻辑过期时间的倍数。所有逻辑过期格式的写入（热点提升、重建、启动预热、手动写入）都带物理 TTL，
+    // 过期后长时间没有被访问（没有触发重建）的 key 会从 Redis 中删除，命名空间版本递增后旧版本的 key 也会随之清理
+    static final long HOT_KEY_PHYSICAL_TTL_FACTOR = 3;
+
+
+    // 热点 key 额外保存的副本数，读取时随机选择主 key 或其中一个副本，写入和删除时覆盖全部；0 表示不使用副本
+    @Value("${hmdp.cache.hot-key.replicas:0}")
+    private int hotKeyReplicas;
+
+    // 是否开启进程内一级缓存（L1）
+    @Value("${hmdp.cache.l1.enabled:true}")
+    private boolean localCacheEnabled;
+
+    // L1 最大条目数
+    @Value("${hmdp.cache.l1.max-size:10000}")
+    private int localCacheMaxSize;
+
+    // L1 条目存活时间（秒），作为丢失失效广播时的兜底，不宜过长
+    @Value("${hmdp.cache.l1.ttl-seconds:30}")
+    private long localCacheTtlSeconds;
+
+    // L1 是否只保存热点 key（需要开启热点探测）。热点只有 top-k 个，打开后 L1 实际只能放下这么多条目，默认关闭，
+    // 所有读到的 key 都放进 L1，由 LRU 淘汰不常访问的条目（热点 key 一直被访问，不会被淘汰）
+    @Value("${hmdp.cache.l1.hot-only:false}")
+    private boolean localCacheHotOnly;
+
+    // 正常停机时把 L1 写入本地快照，启动时读回
+    @Value("${hmdp.cache.l1.snapshot.enabled:true}")
+    private boolean snapshotEnabled;
+
+    @Value("${hmdp.cache.l1.snapshot.path:data/l1-cache.snapshot}")
+    private String snapshotPath;
+
+    // 快照的最长有效期（秒），停机超过该时间后不再读回
+    @Value("${hmdp.cache.l1.snapshot.max-age-seconds:600}")
+    private long snapshotMaxAgeSeconds;
+
+    // 使用版本号命名空间的缓存前缀，key 形如 cache:shop:v{n}:{id}，整个命名空间可以用一次 INCR 失效
+    @Value("${hmdp.cache.namespace.versioned:cache:shop:,cache:blog:}")
+    private String[] versionedNamespaces;
+
+    // 定时从 Redis 同步命名空间版本号（兜底丢失的广播）的间隔（秒）
+    @Value("${hmdp.cache.namespace.refresh-seconds:5}")
+    private long namespaceRefreshSeconds;
+
+    // 提前刷新的激进程度，大于 1 会更早触发重建，小于 1 则更晚
+    @Value("${hmdp.cache.early-refresh-beta:1.0}")
+    private double earlyRefreshBeta;
+
+    // 缓存未命中时，等待同 key 其他线程加载结果的最长时间（毫秒）
+    @Value("${hmdp.cache.load-timeout-millis:3000}")
+    private long loadTimeoutMillis;
+
+    // 命名空间前缀 -> 当前版本号，只会增大
+    private final Map<String, Long> namespaceVersions = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService namespaceRefresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-namespace-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // L1 中存放的是 Redis 里的原始字节，而不是反序列化后的对象，避免调用方修改共享实例
+    private LocalCache<byte[]> localCache;
+
+    @PostConstruct
+    private void init() {
+        initNamespaces();
+        if (!localCacheEnabled) {
+            return;
+        }
+        localCache = new LocalCache<>(localCacheMaxSize, TimeUnit.SECONDS.toMillis(localCacheTtlSeconds));
+        // 订阅失效广播，其他节点更新数据后会把 key 发布到该频道，本节点据此删除 L1 中的旧值
+        redisMessageListenerContainer.addMessageListener(
+            (message, pattern) -> localCache.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+            new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        if (snapshotEnabled) {
+            loadSnapshot();
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        namespaceRefresher.shutdownNow();
+        if (localCache != null && snapshotEnabled) {
+            saveSnapshot();
+        }
+    }
+
+    // 启动时读取各命名空间的版本号，之后由广播和定时任务同步
+    private void initNamespaces() {
+        if (versionedNamespaces.length == 0) {
+            return;
+        }
+        for (String namespace : versionedNamespaces) {
+            namespaceVersions.put(namespace, 0L);
+        }
+        refreshNamespaces();
+        // 广播内容为 "{版本号} {命名空间前缀}"
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            int index = body.indexOf(' ');
+            updateNamespaceVersion(body.substring(index + 1), Long.parseLong(body.substring(0, index)));
+        }, new ChannelTopic(CACHE_NAMESPACE_CHANNEL));
+        namespaceRefresher.scheduleWithFixedDelay(this::refreshNamespaces, namespaceRefreshSeconds,
+            namespaceRefreshSeconds, TimeUnit.SECONDS);
+    }
+
+    private void refreshNamespaces() {
+        try {
+            byte[][] rawKeys = Arrays.stream(versionedNamespaces)
+                .map(namespace -> raw(CACHE_NAMESPACE_VERSION_KEY + namespace)).toArray(byte[][]::new);
+            List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>)c -> c.mGet(rawKeys));
+            for (int i = 0; values != null && i < versionedNamespaces.length; i++) {
+                if (values.get(i) != null) {
+                    updateNamespaceVersion(versionedNamespaces[i],
+                        Long.parseLong(new String(values.get(i), StandardCharsets.UTF_8)));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("同步缓存命名空间版本号失败", e);
+        }
+    }
+
+    private void updateNamespaceVersion(String namespace, long version) {
+        // 只接受更大的版本号，乱序到达的广播不会让版本回退
+        namespaceVersions.computeIfPresent(namespace, (k, current) -> Math.max(current, version));
+    }
+
+    /**
+     * 生成缓存 key：使用版本号命名空间的前缀会带上当前版本号（cache:shop:v{n}:{id}），其他前缀直接拼接 id
+     */
+    public String key(String cachePrefix, Object id) {
+        return namespace(cachePrefix) + id;
+    }
+
+    private String namespace(String cachePrefix) {
+        Long version = namespaceVersions.get(cachePrefix);
+        return version == null ? cachePrefix : cachePrefix + "v" + version + ":";
+    }
+
+    /**
+     * 失效整个命名空间：版本号加一并广播，之后所有节点都读写新版本的 key，旧版本的 key 不再被访问，等待 TTL 到期删除
+     *
+     * @return 新的版本号
+     */
+    public long invalidateNamespace(String cachePrefix) {
+        if (!namespaceVersions.containsKey(cachePrefix)) {
+            throw new IllegalArgumentException("缓存前缀没有使用版本号命名空间：" + cachePrefix);
+        }
+        Long version = stringRedisTemplate.opsForValue().increment(CACHE_NAMESPACE_VERSION_KEY + cachePrefix);
+        if (version == null) {
+            throw new IllegalStateException("递增命名空间版本号失败：" + cachePrefix);
+        }
+        updateNamespaceVersion(cachePrefix, version);
+        stringRedisTemplate.convertAndSend(CACHE_NAMESPACE_CHANNEL, version + " " + cachePrefix);
+        log.info("缓存命名空间 {} 已失效，当前版本：{}", cachePrefix, version);
+        return version;
+    }
 
-    // 将任意Java对象序列化为json并存储在string类型的key中，并且可以设置TTL过期时间
+    // 读回 L1 快照：先恢复访问次数（热点 key 立即可以识别），再直接放入 L1，读回的条目沿用停机前的过期时间
+    private void loadSnapshot() {
+        Path path = Paths.get(snapshotPath);
+        long begin = System.nanoTime();
+        try {
+            int count = LocalCacheSnapshot.read(path, TimeUnit.SECONDS.toMillis(snapshotMaxAgeSeconds),
+                (key, value, frequency, expireAt) -> {
+                    hotKeyDetector.record(key, frequency);
+                    localCache.put(key, value, expireAt);
+                });
+            if (count > 0) {
+                log.info("读回 L1 快照 {} 条，耗时 {} ms", count, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+            }
+        } catch (IOException e) {
+            log.warn("读取 L1 快照失败，从空缓存开始：{}", path, e);
+        } finally {
+            // 快照只用一次，避免异常退出（没有重新写快照）后的下次启动读到更旧的数据
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("删除 L1 快照失败：{}", path, e);
+            }
+        }
+    }
+
+    private void saveSnapshot() {
+        Path path = Paths.get(snapshotPath);
+        long begin = System.nanoTime();
+        List<LocalCacheSnapshot.Entry> entries = new ArrayList<>(localCache.size());
+        localCache.forEach((key, value, expireAt) -> entries.add(new LocalCacheSnapshot.Entry(key, value,
+            hotKeyDetector.estimate(key), expireAt)));
+        try {
+            LocalCacheSnapshot.write(path, entries);
+            log.info("写入 L1 快照 {} 条，耗时 {} ms", entries.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+        } catch (IOException e) {
+            log.warn("写入 L1 快照失败：{}", path, e);
+        }
+    }
+
+    // 将任意Java对象序列化（由 CacheCodec 决定格式）并存储在string类型的key中，并且可以设置TTL过期时间
     public void set(Object data, String key, Long time, TimeUnit unit) {
-        String jsonStr = JSONUtil.toJsonStr(data);
-        stringRedisTemplate.opsForValue().set(key, jsonStr, RandomExpireTimeUtil.getRandomExpire(time), unit);
+        byte[] value = cacheCodec.encode(data);
+        redisSet(key, value, cacheTtlPolicy.ttlSeconds(key, time, unit));
+        putLocal(key, value);
     }
 
-    // 将任意Java对象序列化为json并存储在string类型的key中，并且可以设置逻辑过期时间，用于处理缓存击穿问题
+    // 将任意Java对象序列化并存储在string类型的key中，并且可以设置逻辑过期时间，用于处理缓存击穿问题
+    // （物理 TTL 为逻辑过期时间的 HOT_KEY_PHYSICAL_TTL_FACTOR 倍）
     public void setWithLogicalExpire(Object data, String key, Long time, TimeUnit unit) {
+        setWithLogicalExpire(data, key, time, unit, null);
+    }
+
+    // rebuildCost 为本次查库耗时（毫秒），提前刷新时会用到
+    private void setWithLogicalExpire(Object data, String key, Long time, TimeUnit unit, Long rebuildCost) {
+        long seconds = unit.toSeconds(time);
         RedisData redisData = new RedisData();
         redisData.setData(data);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
-        String jsonStr = JSONUtil.toJsonStr(redisData);
-        stringRedisTemplate.opsForValue().set(key, jsonStr);
+        redisData.setExpireTime(LocalDateTime.now().plusSeconds(seconds));
+        redisData.setRebuildCost(rebuildCost);
+        byte[] value = cacheCodec.encodeRedisData(redisData);
+        redisSet(key, value, seconds * HOT_KEY_PHYSICAL_TTL_FACTOR);
+        putLocal(key, value);
+    }
+
+    /**
+     * 用一个管道批量写入带逻辑过期时间的缓存（不写 L1），用于启动预热。
+     * 与其他逻辑过期格式的写入一样设置物理 TTL（逻辑过期时间的若干倍），之后没有被访问的 key 会从 Redis 中删除；
+     * 只写入不存在的 key（SET NX），不会覆盖其他节点已经重建、或者更新后重新写入的数据
+     *
+     * @param dataMap key -> 要缓存的对象
+     */
+    public void setWithLogicalExpire(Map<String, ?> dataMap, Long time, TimeUnit unit) {
+        if (dataMap.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Map<byte[], byte[]> values = new HashMap<>(dataMap.size() * 2);
+        Map<byte[], Long> physicalSeconds = new HashMap<>(dataMap.size() * 2);
+        dataMap.forEach((key, data) -> {
+            // 逻辑过期时间同样加上随机值，避免预热的数据在同一时刻集中过期
+            long seconds = unit.toSeconds(RandomExpireTimeUtil.getRandomExpire(time));
+            RedisData redisData = new RedisData();
+            redisData.setData(data);
+            redisData.setExpireTime(now.plusSeconds(seconds));
+            byte[] rawKey = raw(key);
+            values.put(rawKey, cacheCodec.encodeRedisData(redisData));
+            physicalSeconds.put(rawKey, seconds * HOT_KEY_PHYSICAL_TTL_FACTOR);
+        });
+        stringRedisTemplate.executePipelined((RedisCallback<Object>)connection -> {
+            values.forEach((key, value) -> connection.set(key, value,
+                Expiration.seconds(physicalSeconds.get(key)), RedisStringCommands.SetOption.ifAbsent()));
+            return null;
+        });
     }
 
     // TODO 补上JMeter测试
-    // 缓存穿透版本（缓存空值）
+    // 缓存穿透版本（缓存空值）；访问频率高的 key 会被自动提升为逻辑过期（不会在 Redis 中突然消失），冷却后降回普通缓存
     public <R, ID> R queryByIdWithPassThrough(ID id, Class<R> type, Function<ID, R> dbGetByIdFunc, String cachePrefix,
         Long time, TimeUnit unit) {
-        String key = cachePrefix + id;
-        // 1.从Redis里查询
-        String shopCache = stringRedisTemplate.opsForValue().get(key);
-        if (StrUtil.isNotEmpty(shopCache)) {
-            return JSONUtil.toBean(shopCache, type);
-        }
-        // 判断是否是空值（缓存穿透）
-        if (shopCache != null) {
+        return queryByIdWithPassThrough(id, type, dbGetByIdFunc, cachePrefix, time, unit, true, true);
+    }
+
+    /**
+     * 缓存穿透版本
+     *
+     * @param cacheNull 查不到数据时是否缓存空值
+     * @param useSingleFlight 未命中时是否合并同一个 key 的并发查库
+     */
+    public <R, ID> R queryByIdWithPassThrough(ID id, Class<R> type, Function<ID, R> dbGetByIdFunc, String cachePrefix,
+        Long time, TimeUnit unit, boolean cacheNull, boolean useSingleFlight) {
+        String key = key(cachePrefix, id);
+        boolean hot = hotKeyDetector.record(key);
+        // 1.先查 L1，再查 Redis
+        byte[] shopCache = getLocal(key);
+        if (shopCache == null) {
+            shopCache = redisGet(key);
+            if (shopCache != null) {
+                putLocal(key, shopCache);
+            }
+        }
+        if (shopCache != null && shopCache.length > 0) {
+            if (isRedisData(key, shopCache)) {
+                // 逻辑过期格式（预热写入或热点提升）
+                RedisData redisData = decodeRedisData(key, shopCache, type);
+                if (redisData != null) {
+                    boolean expired = !redisData.getExpireTime().isAfter(LocalDateTime.now());
+                    if (!expired || hot) {
+                        if (expired) {
+                            // 热点 key 过期后先返回旧值，异步重建
+                            invalidateLocal(key);
+                            submitRebuild(id, dbGetByIdFunc, cachePrefix, time, unit, REBUILD_PRIORITY_EXPIRED);
+                        }
+                        cacheMetrics.hit(cachePrefix);
+                        return type.cast(redisData.getData());
+                    }
+                    // 已经不是热点了，当作未命中，重新查库后按普通格式写回（降级）
+                }
+            } else {
+                R r = decode(key, shopCache, type);
+                if (r != null) {
+                    if (hot) {
+                        // 热点 key 提升为逻辑过期格式
+                        submitRebuild(id, dbGetByIdFunc, cachePrefix, time, unit, REBUILD_PRIORITY_PROMOTE);
+                    }
+                    cacheMetrics.hit(cachePrefix);
+                    return r;
+                }
+            }
+        } else if (shopCache != null) {
+            // 空值（缓存穿透）
+            cacheMetrics.nullHit(cachePrefix);
+            return null;
+        }
+
+        // 2.从数据库里查（同一个 key 在本节点只放行一个线程查库，其余线程等待它的结果）
+        cacheMetrics.miss(cachePrefix);
+        if (!useSingleFlight) {
+            return loadAndCache(id, dbGetByIdFunc, cachePrefix, time, unit, cacheNull);
+        }
+        return singleFlight.execute(key, () -> loadAndCache(id, dbGetByIdFunc, cachePrefix, time, unit, cacheNull),
+            loadTimeoutMillis);
+    }
+
+    // 缓存穿透版本（先用布隆过滤器拦截一定不存在的 id，不产生任何 IO；误判放行的少量请求仍由缓存空值兜底）
+    public <R, ID> R queryByIdWithPassThrough(ID id, Class<R> type, Function<ID, R> dbGetByIdFunc, String cachePrefix,
+        Long time, TimeUnit unit, RedisBloomFilter bloomFilter) {
+        if (!bloomFilter.mightContain(id)) {
+            return null;
+        }
+        return queryByIdWithPassThrough(id, type, dbGetByIdFunc, cachePrefix, time, unit);
+    }
+
+    /**
+     * 直接返回缓存中数据的 JSON（不反序列化成对象），用于把缓存值原样写入 HTTP 响应。
+     * 未命中、空值、已经不是热点的过期逻辑过期值、非 JSON 格式时返回 null，
+     * 由调用方走 queryByIdWithPassThrough（查库、降级和统计都在那里处理）
+     */
+    public <R, ID> byte[] queryJsonById(ID id, Function<ID, R> dbGetByIdFunc, String cachePrefix, Long time,
+        TimeUnit unit) {
+        String key = key(cachePrefix, id);
+        byte[] cache = getLocal(key);
+        if (cache == null) {
+            cache = redisGet(key);
+            if (cache != null) {
+                putLocal(key, cache);
+            }
+        }
+        return toJson(id, dbGetByIdFunc, cachePrefix, time, unit, cache);
+    }
+
+    // 命中时才记录热点和统计，返回 null 的请求会再走一次普通查询流程，避免重复计数
+    <R, ID> byte[] toJson(ID id, Function<ID, R> dbGetByIdFunc, String cachePrefix, Long time, TimeUnit unit,
+        byte[] cache) {
+        if (cache == null || cache.length == 0) {
+            return null;
+        }
+        String key = key(cachePrefix, id);
+        RedisData json;
+        try {
+            json = cacheCodec.toJson(cache);
+        } catch (Exception e) {
+            log.warn("缓存值解码失败，key：{}", key, e);
             return null;
         }
+        if (json == null) {
+            return null;
+        }
+        boolean hot = hotKeyDetector.isHot(key);
+        if (json.getExpireTime() == null) {
+            if (hot) {
+                // 热点 key 提升为逻辑过期格式
+                submitRebuild(id, dbGetByIdFunc, cachePrefix, time, unit, REBUILD_PRIORITY_PROMOTE);
+            }
+        } else if (!json.getExpireTime().isAfter(LocalDateTime.now())) {
+            if (!hot) {
+                return null;
+            }
+            // 热点 key 过期后先返回旧值，异步重建
+            invalidateLocal(key);
+            submitRebuild(id, dbGetByIdFunc, cachePrefix, time, unit, REBUILD_PRIORITY_EXPIRED);
+        }
+        hotKeyDetector.record(key);
+        cacheMetrics.hit(cachePrefix);
+        return (byte[])json.getData();
+    }
 
-        // 2.从数据库里查
+    private <R, ID> R loadAndCache(ID id, Function<ID, R> dbGetByIdFunc, String cachePrefix, Long time,
+        TimeUnit unit, boolean cacheNull) {
+        String key = key(cachePrefix, id);
+        long begin = System.nanoTime();
         R r = dbGetByIdFunc.apply(id);
+        cacheMetrics.recordLoad(cachePrefix, System.nanoTime() - begin);
         if (ObjectUtil.isEmpty(r)) {
+            if (!cacheNull) {
+                return null;
+            }
             // 缓存空值，应对缓存穿透
-            stringRedisTemplate.opsForValue().set(key, "", RandomExpireTimeUtil.getRandomExpire(CACHE_NULL_TTL),
-                TimeUnit.MINUTES);
+            redisSet(key, EMPTY_VALUE,
+                TimeUnit.MINUTES.toSeconds(RandomExpireTimeUtil.getRandomExpire(CACHE_NULL_TTL)));
+            putLocal(key, EMPTY_VALUE);
             return null;
         }
         // 3.如果从数据库查到则写回Redis
@@ -79,60 +493,383 @@ public class CacheClient {
         return r;
     }
 
+    /**
+     * 批量查询（缓存穿透版本）：一次 MGET 查缓存，未命中的 id 用一次 IN 查询从数据库加载，再用管道批量写回
+     *
+     * @param ids 要查询的 id 列表
+     * @param dbBatchFunc 根据 id 集合批量查库的函数，比如 listByIds
+     * @param idGetter 从查到的对象中取出 id，用于和未命中的 id 对应
+     * @return 按 ids 的顺序返回，不存在的 id 会被跳过
+     */
+    public <R, ID> List<R> queryByIds(List<ID> ids, Class<R> type, Function<Collection<ID>, List<R>> dbBatchFunc,
+        Function<R, ID> idGetter, String cachePrefix, Long time, TimeUnit unit) {
+        if (CollectionUtil.isEmpty(ids)) {
+            return Collections.emptyList();
+        }
+        // 整批 key 使用同一个命名空间版本
+        String namespace = namespace(cachePrefix);
+        // 1.先查 L1，剩下的 key 用一次 MGET 查 Redis
+        Map<String, byte[]> cached = new HashMap<>(ids.size() * 2);
+        List<String> redisKeys = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            String key = namespace + id;
+            hotKeyDetector.record(key);
+            byte[] value = getLocal(key);
+            if (value != null) {
+                cached.put(key, value);
+            } else {
+                redisKeys.add(key);
+            }
+        }
+        if (!redisKeys.isEmpty()) {
+            byte[][] rawKeys = redisKeys.stream().map(CacheClient::raw).toArray(byte[][]::new);
+            List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>)c -> c.mGet(rawKeys));
+            for (int i = 0; values != null && i < redisKeys.size(); i++) {
+                byte[] value = values.get(i);
+                if (value != null) {
+                    cached.put(redisKeys.get(i), value);
+                    putLocal(redisKeys.get(i), value);
+                }
+            }
+        }
+
+        // 2.收集未命中的 id（空值说明数据库里也没有，不算未命中）
+        Map<String, R> result = new HashMap<>(ids.size() * 2);
+        List<ID> missIds = new ArrayList<>();
+        for (ID id : ids) {
+            String key = namespace + id;
+            byte[] value = cached.get(key);
+            R r = value == null || value.length == 0 ? null : decode(key, value, type);
+            if (r != null) {
+                cacheMetrics.hit(cachePrefix);
+                result.put(key, r);
+            } else if (value == null || value.length > 0) {
+                // 未命中，或者缓存值无法解码，都需要重新查库
+                cacheMetrics.miss(cachePrefix);
+                missIds.add(id);
+            } else {
+                cacheMetrics.nullHit(cachePrefix);
+            }
+        }
+
+        // 3.未命中的 id 一次性查库，并用管道批量写回 Redis（查不到的写空值）
+        if (!missIds.isEmpty()) {
+            long begin = System.nanoTime();
+            List<R> loaded = dbBatchFunc.apply(missIds);
+            cacheMetrics.recordLoad(cachePrefix, System.nanoTime() - begin);
+            Map<String, byte[]> toCache = new HashMap<>(missIds.size() * 2);
+            for (R r : loaded) {
+                String key = namespace + idGetter.apply(r);
+                result.put(key, r);
+                toCache.put(key, cacheCodec.encode(r));
+            }
+            for (ID id : missIds) {
+                toCache.putIfAbsent(namespace + id, EMPTY_VALUE);
+            }
+            stringRedisTemplate.executePipelined((RedisCallback<Object>)connection -> {
+                for (Map.Entry<String, byte[]> entry : toCache.entrySet()) {
+                    long seconds = entry.getValue().length == 0
+                        ? TimeUnit.MINUTES.toSeconds(RandomExpireTimeUtil.getRandomExpire(CACHE_NULL_TTL))
+                        : cacheTtlPolicy.ttlSeconds(entry.getKey(), time, unit);
+                    connection.setEx(raw(entry.getKey()), seconds, entry.getValue());
+                }
+                return null;
+            });
+            toCache.forEach(this::putLocal);
+        }
+
+        // 4.按传入的顺序返回
+        List<R> list = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            R r = result.get(namespace + id);
+            if (r != null) {
+                list.add(r);
+            }
+        }
+        return list;
+    }
+
     // 缓存击穿（逻辑过期时间）版本
     public <R, ID> R queryByIdWithLogicalExpire(ID id, Class<R> type, Function<ID, R> dbGetByIdFunc, String cachePrefix,
         Long time, TimeUnit unit) {
-        String key = cachePrefix + id;
-        // 1.从Redis里查询
-        String cache = stringRedisTemplate.opsForValue().get(key);
-        // 未命中则直接返回空
-        if (StrUtil.isEmpty(cache)) {
+        return queryWithLogicalExpire(id, type, dbGetByIdFunc, cachePrefix, time, unit, false);
+    }
+
+    /**
+     * 缓存击穿（逻辑过期时间 + 概率提前刷新）版本
+     * <p>
+     * 参考 XFetch 算法：在逻辑过期之前，以 now - rebuildCost * beta * ln(random) >= expireTime 的条件提前触发异步重建，
+     * 越接近过期、上次重建越慢，触发的概率越大。热点 key 几乎不会读到过期数据，重建也会分散开而不是集中在过期那一刻
+     */
+    public <R, ID> R queryByIdWithEarlyRefresh(ID id, Class<R> type, Function<ID, R> dbGetByIdFunc, String cachePrefix,
+        Long time, TimeUnit unit) {
+        return queryWithLogicalExpire(id, type, dbGetByIdFunc, cachePrefix, time, unit, true);
+    }
+
+    private <R, ID> R queryWithLogicalExpire(ID id, Class<R> type, Function<ID, R> dbGetByIdFunc, String cachePrefix,
+        Long time, TimeUnit unit, boolean earlyRefresh) {
+        String key = key(cachePrefix, id);
+        hotKeyDetector.record(key);
+        // 1.先查 L1，再查 Redis
+        byte[] cache = getLocal(key);
+        if (cache == null) {
+            cache = redisGet(key);
+        }
+        if (cache == null) {
+            // 未命中（从未写入，或者长时间没有访问、物理 TTL 到期被删除），查库后按逻辑过期格式写入
+            cacheMetrics.miss(cachePrefix);
+            return singleFlight.execute(key, () -> loadWithLogicalExpire(id, dbGetByIdFunc, cachePrefix, time, unit),
+                loadTimeoutMillis);
+        }
+        if (cache.length == 0) {
+            // 空值（缓存穿透）
+            cacheMetrics.nullHit(cachePrefix);
             return null;
         }
 
-        // 命中则需要先反序列化
-        RedisData redisData = JSONUtil.toBean(cache, RedisData.class);
-        JSONObject data = (JSONObject)redisData.getData();
-        R r = JSONUtil.toBean(data, type);
+        // 命中则需要先反序列化（一次解码直接得到目标类型）
+        RedisData redisData = decodeRedisData(key, cache, type);
+        if (redisData == null) {
+            cacheMetrics.miss(cachePrefix);
+            return null;
+        }
+        cacheMetrics.hit(cachePrefix);
+        R r = type.cast(redisData.getData());
         // 判断逻辑缓存是否过期
-        if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+        boolean expired = !redisData.getExpireTime().isAfter(LocalDateTime.now());
+        if (!expired) {
             // 未过期，直接返回
-            return r;
-        }
-        // 如果过期，则需要重构缓存
-        // 先获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        if (tryLock(lockKey)) {
-            // 开启独立线程去重构缓存
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    // 重建缓存
-                    // 1.查询数据库
-                    R result = dbGetByIdFunc.apply(id);
-                    // 2.写回Redis
-                    setWithLogicalExpire(result, key, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    // 释放锁
-                    unlock(key);
-                }
-            });
+            putLocal(key, cache);
+            if (!earlyRefresh || !shouldRefreshEarly(redisData)) {
+                return r;
+            }
+        } else {
+            // 已逻辑过期的值不放进 L1，重建完成后各节点能尽快读到新值
+            invalidateLocal(key);
         }
+        // 如果过期（或者命中了提前刷新），则需要重构缓存
+        // 交给重建调度器：由它获取互斥锁、去重、排队，队列满或锁被占用时直接返回旧值
+        int priority = expired ? REBUILD_PRIORITY_EXPIRED : REBUILD_PRIORITY_EARLY;
+        submitRebuild(id, dbGetByIdFunc, cachePrefix, time, unit, priority);
         return r;
     }
 
-    // 获取互斥锁
-    private boolean tryLock(String key) {
-        // 用Redis的setnx来作为互斥锁，并设置过期时间作为兜底（防止获取锁的线程崩溃导致锁一直不被释放）
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1",
-            RandomExpireTimeUtil.getRandomExpire(LOCK_SHOP_TTL), TimeUnit.SECONDS);
-        return BooleanUtil.isTrue(flag);
+    private <R, ID> R loadWithLogicalExpire(ID id, Function<ID, R> dbGetByIdFunc, String cachePrefix, Long time,
+        TimeUnit unit) {
+        String key = key(cachePrefix, id);
+        long begin = System.nanoTime();
+        R r = dbGetByIdFunc.apply(id);
+        long elapsed = System.nanoTime() - begin;
+        cacheMetrics.recordLoad(cachePrefix, elapsed);
+        if (ObjectUtil.isEmpty(r)) {
+            // 缓存空值，应对缓存穿透
+            redisSet(key, EMPTY_VALUE,
+                TimeUnit.MINUTES.toSeconds(RandomExpireTimeUtil.getRandomExpire(CACHE_NULL_TTL)));
+            putLocal(key, EMPTY_VALUE);
+            return null;
+        }
+        setWithLogicalExpire(r, key, time, unit, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return r;
+    }
+
+    // XFetch：rebuildCost * beta * -ln(random) 服从指数分布，离过期越近越容易越过过期时间
+    private boolean shouldRefreshEarly(RedisData redisData) {
+        Long rebuildCost = redisData.getRebuildCost();
+        if (rebuildCost == null || rebuildCost <= 0) {
+            return false;
+        }
+        double gap = -rebuildCost * earlyRefreshBeta * Math.log(ThreadLocalRandom.current().nextDouble());
+        long expireMillis = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return System.currentTimeMillis() + gap >= expireMillis;
+    }
+
+    // 提交到重建调度器：查库（记录耗时，供提前刷新判断）并按逻辑过期格式写回
+    <R, ID> void submitRebuild(ID id, Function<ID, R> dbGetByIdFunc, String cachePrefix, Long time,
+        TimeUnit unit, int priority) {
+        String key = key(cachePrefix, id);
+        cacheRebuildScheduler.submit(key, lockKey(key), priority, () -> {
+            long begin = System.nanoTime();
+            R result = dbGetByIdFunc.apply(id);
+            long elapsed = System.nanoTime() - begin;
+            cacheMetrics.recordLoad(cachePrefix, elapsed);
+            long rebuildCost = TimeUnit.NANOSECONDS.toMillis(elapsed);
+            if (result == null) {
+                // 数据已被删除，删掉旧值即可，下次访问会缓存空值
+                evict(key);
+                return;
+            }
+            setWithLogicalExpire(result, key, time, unit, rebuildCost);
+        });
+    }
+
+    /**
+     * 数据库中的值变化后，用最新的值直接覆盖缓存（而不是删除），用于点赞这类高频、只改计数的写操作：
+     * 不会让被频繁修改的热点 key 反复失效、击穿到数据库。热点 key 按逻辑过期格式写入，其余按普通格式写入，
+     * 并广播给其他节点删除 L1 中的旧值。数据已被删除时删掉缓存
+     */
+    public <R, ID> void refresh(ID id, Function<ID, R> dbGetByIdFunc, String cachePrefix, Long time, TimeUnit unit) {
+        String key = key(cachePrefix, id);
+        R r = dbGetByIdFunc.apply(id);
+        if (r == null) {
+            evict(key);
+            return;
+        }
+        if (hotKeyDetector.isHot(key)) {
+            setWithLogicalExpire(r, key, time, unit);
+        } else {
+            set(r, key, time, unit);
+        }
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    // 重建缓存时使用的互斥锁 key，所有重建缓存的地方都要用它，同一个缓存 key 同一时刻只会有一个重建
+    public static String lockKey(String key) {
+        return LOCK_CACHE_KEY + key;
+    }
+
+    // 删除缓存，并广播给所有节点（包括自己）删除 L1 中对应的条目
+    public void evict(String key) {
+        // 副本一起删除（key 可能已经不是热点了，但之前写入的副本还在）
+        stringRedisTemplate.delete(allKeys(key));
+        invalidateLocal(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    /**
+     * 批量删除缓存：一个管道内完成 UNLINK（在 Redis 后台线程释放内存）和失效广播，失败时抛出异常由调用方重试
+     */
+    public void evictAll(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        byte[] channel = raw(CACHE_INVALIDATE_CHANNEL);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>)connection -> {
+            for (String key : keys) {
+                // 逐个 key UNLINK，副本在 Redis Cluster 中分布在不同的槽，不能放在同一条命令里
+                for (String k : allKeys(key)) {
+                    connection.unlink(raw(k));
+                }
+                connection.publish(channel, raw(key));
+            }
+            return null;
+        });
+        for (String key : keys) {
+            invalidateLocal(key);
+        }
+    }
+
+    <R> R decode(String key, byte[] bytes, Class<R> type) {
+        try {
+            if (cacheCodec.isRedisData(bytes)) {
+                // 启动预热写入的是逻辑过期格式：未过期直接使用，过期后当作未命中，重新查库后按普通格式覆盖
+                RedisData redisData = cacheCodec.decodeRedisData(bytes, type);
+                return redisData.getExpireTime().isAfter(LocalDateTime.now()) ? type.cast(redisData.getData()) : null;
+            }
+            return cacheCodec.decode(bytes, type);
+        } catch (Exception e) {
+            // 格式不兼容（比如切换了编解码器），当作未命中处理，重新查库后会被覆盖
+            log.warn("缓存值解码失败，key：{}", key, e);
+            return null;
+        }
+    }
+
+    boolean isRedisData(String key, byte[] bytes) {
+        try {
+            return cacheCodec.isRedisData(bytes);
+        } catch (Exception e) {
+            log.warn("缓存值解码失败，key：{}", key, e);
+            return false;
+        }
+    }
+
+    RedisData decodeRedisData(String key, byte[] bytes, Class<?> type) {
+        try {
+            return cacheCodec.decodeRedisData(bytes, type);
+        } catch (Exception e) {
+            log.warn("缓存值解码失败，key：{}", key, e);
+            return null;
+        }
+    }
+
+    // 热点 key 随机读取主 key 或一个副本，副本还没写入（刚成为热点）时再读主 key
+    private byte[] redisGet(String key) {
+        String readKey = readKey(key);
+        byte[] value = stringRedisTemplate.execute((RedisCallback<byte[]>)connection -> connection.get(raw(readKey)));
+        if (value == null && !readKey.equals(key)) {
+            value = stringRedisTemplate.execute((RedisCallback<byte[]>)connection -> connection.get(raw(key)));
+        }
+        return value;
+    }
+
+    // seconds <= 0 表示不设置 TTL；热点 key 同时写入所有副本
+    private void redisSet(String key, byte[] value, long seconds) {
+        List<String> writeKeys = writeKeys(key);
+        RedisCallback<Object> callback = connection -> {
+            for (String k : writeKeys) {
+                if (seconds > 0) {
+                    connection.setEx(raw(k), seconds, value);
+                } else {
+                    connection.set(raw(k), value);
+                }
+            }
+            return null;
+        };
+        if (writeKeys.size() == 1) {
+            stringRedisTemplate.execute(callback);
+        } else {
+            stringRedisTemplate.executePipelined(callback);
+        }
+    }
+
+    // 读取时使用的 key：热点 key 在主 key 和各副本中随机选一个，把读请求分散到不同节点
+    String readKey(String key) {
+        if (hotKeyReplicas <= 0 || !hotKeyDetector.isHot(key)) {
+            return key;
+        }
+        int index = ThreadLocalRandom.current().nextInt(hotKeyReplicas + 1);
+        return index == 0 ? key : key + REPLICA_SUFFIX + index;
+    }
+
+    // 写入时使用的 key：热点 key 为主 key 加全部副本
+    List<String> writeKeys(String key) {
+        if (hotKeyReplicas <= 0 || !hotKeyDetector.isHot(key)) {
+            return Collections.singletonList(key);
+        }
+        return allKeys(key);
     }
 
-    // 释放互斥锁
-    private void unlock(String key) {
-        stringRedisTemplate.delete(key);
+    // 删除时使用的 key：主 key 加全部副本
+    private List<String> allKeys(String key) {
+        if (hotKeyReplicas <= 0) {
+            return Collections.singletonList(key);
+        }
+        List<String> keys = new ArrayList<>(hotKeyReplicas + 1);
+        keys.add(key);
+        for (int i = 1; i <= hotKeyReplicas; i++) {
+            keys.add(key + REPLICA_SUFFIX + i);
+        }
+        return keys;
+    }
+
+    private static byte[] raw(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    byte[] getLocal(String key) {
+        return localCache == null ? null : localCache.get(key);
+    }
+
+    // 打开 hot-only 时 L1 只保存热点 key，避免大量只访问一次的 key 把热点挤出去
+    void putLocal(String key, byte[] value) {
+        if (localCache != null && (!localCacheHotOnly || !hotKeyDetector.isEnabled() || hotKeyDetector.isHot(key))) {
+            localCache.put(key, value);
+        }
+    }
+
+    void invalidateLocal(String key) {
+        if (localCache != null) {
+            localCache.invalidate(key);
+        }
     }
 
 }
@@ -0,0 +1,58 @@
+package com.hmdp.utils;
+
+/**
+ * @author hwj
+ * @create: 2024-09-10 20:05
+ * @Description: 缓存值编解码器，CacheClient 通过它把对象序列化成写入 Redis 的字节数组
+ */
+public interface CacheCodec {
+    /**
+     * 编码普通缓存值
+     *
+     * @param value 要缓存的对象
+     * @return 写入 Redis 的字节
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 解码普通缓存值
+     *
+     * @param bytes 从 Redis 读到的字节（非空）
+     * @param type 目标类型
+     * @return 解码后的对象
+     */
+    <T> T decode(byte[] bytes, Class<T> type);
+
+    /**
+     * 编码带逻辑过期时间的缓存值
+     *
+     * @param redisData 逻辑过期时间及数据
+     * @return 写入 Redis 的字节
+     */
+    byte[] encodeRedisData(RedisData redisData);
+
+    /**
+     * 解码带逻辑过期时间的缓存值，一次解码直接得到目标类型的数据
+     *
+     * @param bytes 从 Redis 读到的字节（非空）
+     * @param type data 字段的目标类型
+     * @return data 字段已经是 type 类型的 RedisData
+     */
+    RedisData decodeRedisData(byte[] bytes, Class<?> type);
+
+    /**
+     * 判断字节是否为带逻辑过期时间的缓存值（预热写入的是逻辑过期格式，普通读取路径需要能够识别）
+     *
+     * @param bytes 从 Redis 读到的字节（非空）
+     * @return true 表示应该用 decodeRedisData 解码
+     */
+    boolean isRedisData(byte[] bytes);
+
+    /**
+     * 不解码成对象，直接取出缓存值中数据部分的 JSON（可以原样写入 HTTP 响应）
+     *
+     * @param bytes 从 Redis 读到的字节（非空）
+     * @return data 为 JSON 字节的 RedisData，普通缓存值的 expireTime 为 null；不是 JSON 格式时返回 null
+     */
+    RedisData toJson(byte[] bytes);
+}
@@ -0,0 +1,178 @@
+package com.hmdp.utils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.CacheInvalidation;
+import com.hmdp.mapper.CacheInvalidationMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author hwj
+ * @create: 2024-09-18 20:05
+ * @Description: 缓存失效（先更新数据库，再删除缓存）：
+ *               1. 在事务内调用时，等事务提交后（afterCommit）再删除，避免提交前被并发读请求用旧数据回填缓存；
+ *               2. 延迟一段时间后再删除一次（延迟双删），清掉提交前后并发读请求回填的旧值；
+ *               3. 同一个事务内的所有 key 合并成一批，用管道 UNLINK；
+ *               4. 删除失败的 key 写入 tb_cache_invalidation，由后台任务按退避间隔重试
+ */
+@Slf4j
+@Component
+public class CacheInvalidator {
+
+    // 绑定到当前事务的待删除 key 集合
+    private static final Object RESOURCE_KEY = new Object();
+
+    private static final int RETRY_BATCH_SIZE = 100;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private CacheInvalidationMapper cacheInvalidationMapper;
+
+    @Resource
+    private CacheTtlPolicy cacheTtlPolicy;
+
+    @Value("${hmdp.cache.invalidate.delay-millis:500}")
+    private long delayMillis;
+
+    @Value("${hmdp.cache.invalidate.retry-period-seconds:5}")
+    private long retryPeriodSeconds;
+
+    @Value("${hmdp.cache.invalidate.max-retries:10}")
+    private int maxRetries;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-invalidate");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    private void init() {
+        executor.scheduleWithFixedDelay(this::retryFailed, retryPeriodSeconds, retryPeriodSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdown();
+    }
+
+    public void invalidate(String... keys) {
+        invalidate(Arrays.asList(keys));
+    }
+
+    /**
+     * 删除缓存。有事务时在提交后删除（回滚则不删除），没有事务时立即删除；两种情况都会延迟再删除一次
+     */
+    @SuppressWarnings("unchecked")
+    public void invalidate(Collection<String> keys) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            doubleDelete(new ArrayList<>(keys));
+            return;
+        }
+        Set<String> pending = (Set<String>)TransactionSynchronizationManager.getResource(RESOURCE_KEY);
+        if (pending == null) {
+            Set<String> batch = new LinkedHashSet<>();
+            TransactionSynchronizationManager.bindResource(RESOURCE_KEY, batch);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doubleDelete(new ArrayList<>(batch));
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(RESOURCE_KEY);
+                }
+            });
+            pending = batch;
+        }
+        pending.addAll(keys);
+    }
+
+    // 每次写操作只调用一次（事务提交后或无事务时立即），在这里记录更新次数，第二次删除和失败重试不再计数
+    private void doubleDelete(List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        keys.forEach(cacheTtlPolicy::recordUpdate);
+        delete(keys);
+        executor.schedule(() -> delete(keys), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void delete(List<String> keys) {
+        try {
+            cacheClient.evictAll(keys);
+        } catch (Exception e) {
+            log.warn("删除缓存失败，稍后重试，keys：{}", keys, e);
+            saveFailed(keys);
+        }
+    }
+
+    private void saveFailed(List<String> keys) {
+        LocalDateTime nextRetryTime = LocalDateTime.now().plusSeconds(retryPeriodSeconds);
+        for (String key : keys) {
+            try {
+                cacheInvalidationMapper.insert(
+                    new CacheInvalidation().setCacheKey(key).setRetryCount(0).setNextRetryTime(nextRetryTime));
+            } catch (Exception e) {
+                log.error("记录删除失败的缓存 key 失败，key：{}", key, e);
+            }
+        }
+    }
+
+    // 重试之前删除失败的 key，成功后删除记录；失败则按 retryPeriod * 2^retryCount 退避，超过最大次数后放弃
+    private void retryFailed() {
+        try {
+            List<CacheInvalidation> records = cacheInvalidationMapper
+                .selectList(new QueryWrapper<CacheInvalidation>().le("next_retry_time", LocalDateTime.now())
+                    .orderByAsc("id").last("limit " + RETRY_BATCH_SIZE));
+            if (records.isEmpty()) {
+                return;
+            }
+            List<Long> ids = records.stream().map(CacheInvalidation::getId).collect(Collectors.toList());
+            try {
+                cacheClient.evictAll(records.stream().map(CacheInvalidation::getCacheKey).collect(Collectors.toSet()));
+                cacheInvalidationMapper.deleteBatchIds(ids);
+                return;
+            } catch (Exception e) {
+                log.warn("重试删除缓存失败，共 {} 个 key", records.size(), e);
+            }
+            for (CacheInvalidation record : records) {
+                int retryCount = record.getRetryCount() + 1;
+                if (retryCount >= maxRetries) {
+                    log.error("缓存 key 删除失败次数超过 {} 次，放弃重试：{}", maxRetries, record.getCacheKey());
+                    cacheInvalidationMapper.deleteById(record.getId());
+                    continue;
+                }
+                long backoff = retryPeriodSeconds << Math.min(retryCount, 10);
+                cacheInvalidationMapper.updateById(new CacheInvalidation().setId(record.getId())
+                    .setRetryCount(retryCount).setNextRetryTime(LocalDateTime.now().plusSeconds(backoff)));
+            }
+        } catch (Exception e) {
+            log.error("重试删除缓存失败", e);
+        }
+    }
+}
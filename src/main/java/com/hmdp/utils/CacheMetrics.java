@@ -0,0 +1,99 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * @author hwj
+ * @create: 2024-09-17 20:15
+ * @Description: 缓存指标，按缓存前缀（cache:shop:、cache:shop-type:list 等）统计，通过 /actuator/metrics 查看：
+ *               cache.requests{prefix, result=hit|miss|null_hit}、cache.load{prefix}（查库耗时直方图）、
+ *               cache.lock.failures{prefix}、cache.rebuild.queue.depth、cache.rebuild.lock.failures。
+ *               计数用 LongAdder（分段计数，高并发下几乎没有竞争），Micrometer 读取时才汇总
+ */
+@Component
+public class CacheMetrics {
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Resource
+    private CacheRebuildScheduler cacheRebuildScheduler;
+
+    private final ConcurrentHashMap<String, PrefixMetrics> metrics = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        Gauge.builder("cache.rebuild.queue.depth", cacheRebuildScheduler, CacheRebuildScheduler::getQueueDepth)
+            .description("排队等待重建的缓存 key 数量").register(meterRegistry);
+        FunctionCounter
+            .builder("cache.rebuild.lock.failures", cacheRebuildScheduler,
+                CacheRebuildScheduler::getLockFailedCount)
+            .description("重建缓存时获取分布式锁失败的次数").register(meterRegistry);
+    }
+
+    public void hit(String prefix) {
+        get(prefix).hits.increment();
+    }
+
+    public void miss(String prefix) {
+        get(prefix).misses.increment();
+    }
+
+    public void nullHit(String prefix) {
+        get(prefix).nullHits.increment();
+    }
+
+    public void lockFailed(String prefix) {
+        get(prefix).lockFailures.increment();
+    }
+
+    /**
+     * 记录一次查库（含重建）耗时
+     */
+    public void recordLoad(String prefix, long nanos) {
+        get(prefix).loadTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private PrefixMetrics get(String prefix) {
+        PrefixMetrics prefixMetrics = metrics.get(prefix);
+        if (prefixMetrics == null) {
+            prefixMetrics = metrics.computeIfAbsent(prefix, PrefixMetrics::new);
+        }
+        return prefixMetrics;
+    }
+
+    private class PrefixMetrics {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder nullHits = new LongAdder();
+        private final LongAdder lockFailures = new LongAdder();
+        private final Timer loadTimer;
+
+        private PrefixMetrics(String prefix) {
+            register("cache.requests", prefix, "hit", hits);
+            register("cache.requests", prefix, "miss", misses);
+            register("cache.requests", prefix, "null_hit", nullHits);
+            FunctionCounter.builder("cache.lock.failures", lockFailures, LongAdder::sum).tag("prefix", prefix)
+                .description("获取缓存互斥锁失败的次数").register(meterRegistry);
+            loadTimer = Timer.builder("cache.load").tag("prefix", prefix).description("缓存未命中时查库的耗时")
+                .publishPercentileHistogram().register(meterRegistry);
+        }
+
+        private void register(String name, String prefix, String result, LongAdder adder) {
+            FunctionCounter.builder(name, adder, LongAdder::sum).tag("prefix", prefix).tag("result", result)
+                .register(meterRegistry);
+        }
+    }
+}
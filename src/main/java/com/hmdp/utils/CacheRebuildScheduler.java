@@ -0,0 +1,215 @@
+package com.hmdp.utils;
+
+import static com.hmdp.utils.RedisConstants.LOCK_SHOP_TTL;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import cn.hutool.core.lang.UUID;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author hwj
+ * @create: 2024-09-14 20:10
+ * @Description: 缓存重建调度器，替代各处自建的 Executors.newFixedThreadPool(10)（无界队列）：
+ *               1. 队列有界，满了直接拒绝，调用方继续返回旧值；
+ *               2. 同一个 key 已在队列中或正在重建时不会重复提交；
+ *               3. 优先级高的 key（已过期、热点）先重建；
+ *               4. 分布式锁在任务开始执行时由工作线程获取、执行完释放：排队中的任务不占用锁，锁的过期时间只需覆盖重建本身，
+ *                  也不会阻塞其他节点；提交方（包括 Lettuce 的事件循环线程）只做本地去重和入队，不访问 Redis
+ */
+@Slf4j
+@Component
+public class CacheRebuildScheduler {
+
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+
+    static {
+        UNLOCK_SCRIPT = new DefaultRedisScript<>();
+        UNLOCK_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
+        UNLOCK_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.cache.rebuild.threads:10}")
+    private int threads;
+
+    @Value("${hmdp.cache.rebuild.queue-capacity:1000}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    // 已提交但还没执行完的 key，用于去重
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    // 排队中的任务数（PriorityBlockingQueue 本身是无界的，用它来限制队列长度）
+    private final AtomicInteger queued = new AtomicInteger();
+
+    // 同优先级按提交顺序执行
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder lockFailed = new LongAdder();
+
+    @PostConstruct
+    private void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<>(Math.min(queueCapacity, 64)), r -> {
+                Thread thread = new Thread(r, "cache-rebuild-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdown();
+    }
+
+    /**
+     * 提交缓存重建任务
+     *
+     * @param key 缓存 key，用于去重
+     * @param lockKey 分布式锁 key，保证集群内同一时刻只有一个节点重建
+     * @param priority 优先级，越大越先执行
+     * @param rebuild 重建逻辑（查库并写回缓存）
+     * @return true 表示已入队；false 表示重复提交或队列已满，调用方继续返回旧值即可。
+     *         锁被其他节点持有时任务在执行时直接放弃
+     */
+    public boolean submit(String key, String lockKey, int priority, Runnable rebuild) {
+        // 1.本地去重
+        if (!pendingKeys.add(key)) {
+            deduplicated.increment();
+            return false;
+        }
+        // 2.队列已满则拒绝
+        if (queued.incrementAndGet() > queueCapacity) {
+            release(key);
+            rejected.increment();
+            return false;
+        }
+        // 3.入队，分布式锁在任务执行时再获取
+        try {
+            executor.execute(new RebuildTask(key, lockKey, priority, sequence.incrementAndGet(), rebuild));
+        } catch (RejectedExecutionException e) {
+            // 线程池已关闭
+            release(key);
+            rejected.increment();
+            return false;
+        }
+        submitted.increment();
+        return true;
+    }
+
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    public long getLockFailedCount() {
+        return lockFailed.sum();
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("queueDepth", (long)queued.get());
+        stats.put("submitted", submitted.sum());
+        stats.put("deduplicated", deduplicated.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("lockFailed", lockFailed.sum());
+        return stats;
+    }
+
+    private void release(String key) {
+        queued.decrementAndGet();
+        pendingKeys.remove(key);
+    }
+
+    // 用 SETNX 加锁，value 为本次任务独有的标识，设置过期时间作为兜底
+    private String tryLock(String lockKey) {
+        String token = UUID.randomUUID().toString(true);
+        Boolean success = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, token,
+            RandomExpireTimeUtil.getRandomExpire(LOCK_SHOP_TTL), TimeUnit.SECONDS);
+        return Boolean.TRUE.equals(success) ? token : null;
+    }
+
+    // 通过 lua 脚本比较锁标识后再删除，避免锁过期后误删其他节点的锁
+    private void unlock(String lockKey, String token) {
+        try {
+            stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), token);
+        } catch (Exception e) {
+            log.error("释放缓存重建锁失败，lockKey：{}", lockKey, e);
+        }
+    }
+
+    private class RebuildTask implements Runnable, Comparable<RebuildTask> {
+        private final String key;
+        private final String lockKey;
+        private final int priority;
+        private final long seq;
+        private final Runnable rebuild;
+
+        private RebuildTask(String key, String lockKey, int priority, long seq, Runnable rebuild) {
+            this.key = key;
+            this.lockKey = lockKey;
+            this.priority = priority;
+            this.seq = seq;
+            this.rebuild = rebuild;
+        }
+
+        @Override
+        public void run() {
+            queued.decrementAndGet();
+            String token = null;
+            try {
+                // 开始执行时才获取分布式锁，获取失败说明其他节点正在重建，直接放弃
+                token = tryLock(lockKey);
+                if (token == null) {
+                    lockFailed.increment();
+                    return;
+                }
+                rebuild.run();
+            } catch (Exception e) {
+                log.error("缓存重建失败，key：{}", key, e);
+            } finally {
+                // 释放的一定是本任务获取的那把锁
+                if (token != null) {
+                    unlock(lockKey, token);
+                }
+                pendingKeys.remove(key);
+            }
+        }
+
+        @Override
+        public int compareTo(RebuildTask other) {
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            return Long.compare(seq, other.seq);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * @author hwj
+ * @create: 2024-09-24 20:30
+ * @Description: 缓存 TTL 策略：根据 key 最近的读频率和更新频率决定写入 Redis 时的 TTL，而不是所有 key 都用同一个 TTL。
+ *               读得越多 TTL 越长（热点数据少重建），更新得越多 TTL 越短（反正很快会被删除，不必长期占用内存），
+ *               结果限制在 [基础 TTL * min-factor, 基础 TTL * max-factor] 之间，再加上随机抖动避免同时过期。
+ *               读频率取自热点探测的计数，更新频率由 CacheInvalidator 在每次写操作（事务提交后）记录一次，
+ *               延迟双删、失败重试不会重复计数。更新远比读稀疏，更新计数单独按更长的周期衰减
+ */
+@Component
+public class CacheTtlPolicy {
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Value("${hmdp.cache.ttl.adaptive:true}")
+    private boolean adaptive;
+
+    // 最短 TTL 为基础 TTL 的倍数（很少被读的 key）
+    @Value("${hmdp.cache.ttl.min-factor:0.2}")
+    private double minFactor;
+
+    // 最长 TTL 为基础 TTL 的倍数（经常被读且很少更新的 key）
+    @Value("${hmdp.cache.ttl.max-factor:4}")
+    private double maxFactor;
+
+    // 一个衰减周期内读到这么多次即按最长 TTL 计算
+    @Value("${hmdp.cache.ttl.hot-reads:100}")
+    private long hotReads;
+
+    // 随机抖动占 TTL 的比例
+    @Value("${hmdp.cache.ttl.jitter-ratio:0.1}")
+    private double jitterRatio;
+
+    @Value("${hmdp.cache.hot-key.width:4096}")
+    private int width;
+
+    // 更新计数减半的周期（秒），要覆盖若干次更新的间隔，否则每次更新前计数都已衰减到 0
+    @Value("${hmdp.cache.ttl.update-decay-seconds:300}")
+    private long updateDecaySeconds;
+
+    // 更新（写操作）次数
+    private CountMinSketch updates;
+
+    private DistributionSummary ttlSummary;
+
+    private final ScheduledExecutorService decayExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-ttl-decay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    private void init() {
+        updates = new CountMinSketch(width);
+        ttlSummary = DistributionSummary.builder("cache.ttl").description("写入 Redis 的缓存 TTL").baseUnit("seconds")
+            .register(meterRegistry);
+        if (adaptive) {
+            decayExecutor.scheduleWithFixedDelay(updates::decay, updateDecaySeconds, updateDecaySeconds,
+                TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        decayExecutor.shutdownNow();
+    }
+
+    /**
+     * 记录一次更新（一次写操作只记录一次）
+     */
+    public void recordUpdate(String key) {
+        if (adaptive) {
+            updates.increment(key, 1);
+        }
+    }
+
+    /**
+     * 计算 key 写入 Redis 时的 TTL
+     *
+     * @param time 基础 TTL
+     * @return TTL（秒），已包含随机抖动
+     */
+    public long ttlSeconds(String key, Long time, TimeUnit unit) {
+        if (!adaptive || !hotKeyDetector.isEnabled()) {
+            // 与之前相同：固定 TTL 加上随机值
+            return unit.toSeconds(RandomExpireTimeUtil.getRandomExpire(time));
+        }
+        double base = unit.toSeconds(time);
+        double min = base * minFactor;
+        double max = base * maxFactor;
+        // 读频率按对数映射到 [0, 1]，几次读和几十次读的差别比几百次和几千次的差别更重要
+        long reads = hotKeyDetector.estimate(key);
+        double readScore = Math.min(1, Math.log1p(reads) / Math.log1p(hotReads));
+        double ttl = min + (max - min) * readScore;
+        // 每次更新都会删除缓存，最近更新越频繁，缓存值的实际寿命越短
+        ttl /= 1 + updates.estimate(key);
+        ttl = Math.max(min, Math.min(max, ttl));
+        if (jitterRatio > 0) {
+            ttl *= 1 + ThreadLocalRandom.current().nextDouble(-jitterRatio, jitterRatio);
+        }
+        long seconds = Math.max(1, Math.round(ttl));
+        ttlSummary.record(seconds);
+        return seconds;
+    }
+}
@@ -0,0 +1,185 @@
+package com.hmdp.utils;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Resource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.service.IShopTypeService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author hwj
+ * @create: 2024-09-15 19:40
+ * @Description: 启动时预热缓存（之前只能手动跑 HmDianPingApplicationTests 里的 testsavaRedisData、loadShopData）：
+ *               1. 店铺类型列表；
+ *               2. 按类型并行、流式读取 tb_shop，分批用管道写入逻辑过期的店铺缓存（带物理 TTL，已有的 key 不覆盖）和 shop:geo:{typeId}；
+ *               3. 流式读取未结束的秒杀券，分批补齐 Redis 中没有的库存（由 SeckillStockBuckets 按配置的桶数拆分，已有的库存不覆盖）。
+ *               ApplicationRunner 执行完之后 Spring Boot 才会发布 ReadinessState.ACCEPTING_TRAFFIC，
+ *               所以预热结束前实例不会被判定为就绪；预热失败或超时只记录日志，不影响启动
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class CacheWarmUpRunner implements ApplicationRunner {
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private SeckillVoucherMapper seckillVoucherMapper;
+
+    @Resource
+    private IShopTypeService shopTypeService;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private SeckillStockBuckets seckillStockBuckets;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.warm-up.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hmdp.warm-up.parallelism:4}")
+    private int parallelism;
+
+    @Value("${hmdp.warm-up.batch-size:500}")
+    private int batchSize;
+
+    @Value("${hmdp.warm-up.timeout-seconds:300}")
+    private long timeoutSeconds;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        long begin = System.currentTimeMillis();
+        AtomicLong shopCount = new AtomicLong();
+        AtomicLong voucherCount = new AtomicLong();
+        try {
+            // 1.店铺类型列表（未命中时由 queryTypeList 自己查库并写入缓存）
+            shopTypeService.queryTypeList();
+            List<ShopType> shopTypes = shopTypeService.list();
+
+            // 2.每个类型一个任务，秒杀库存一个任务，并行执行
+            AtomicInteger threadIndex = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism),
+                r -> new Thread(r, "cache-warm-up-" + threadIndex.incrementAndGet()));
+            List<Future<?>> futures = new ArrayList<>(shopTypes.size() + 1);
+            for (ShopType shopType : shopTypes) {
+                futures.add(executor.submit(() -> warmUpShops(shopType.getId(), shopCount)));
+            }
+            futures.add(executor.submit(() -> warmUpSeckillStock(voucherCount)));
+            executor.shutdown();
+            if (!executor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)) {
+                log.warn("缓存预热超过 {} 秒未完成，放弃剩余任务", timeoutSeconds);
+                executor.shutdownNow();
+            }
+            for (Future<?> future : futures) {
+                if (future.isDone() && !future.isCancelled()) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        log.error("缓存预热任务失败", e.getCause());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("缓存预热失败", e);
+        }
+        log.info("缓存预热结束：店铺 {} 家，秒杀券 {} 张，耗时 {} ms", shopCount.get(), voucherCount.get(),
+            System.currentTimeMillis() - begin);
+    }
+
+    private void warmUpShops(Long typeId, AtomicLong total) {
+        String geoKey = SHOP_GEO_KEY + typeId;
+        Map<String, Shop> shops = new HashMap<>(batchSize * 2);
+        Map<String, Point> locations = new HashMap<>(batchSize * 2);
+        AtomicLong count = new AtomicLong();
+        shopMapper.streamByTypeId(typeId, context -> {
+            Shop shop = context.getResultObject();
+            shops.put(cacheClient.key(CACHE_SHOP_KEY, shop.getId()), shop);
+            if (shop.getX() != null && shop.getY() != null) {
+                locations.put(shop.getId().toString(), new Point(shop.getX(), shop.getY()));
+            }
+            if (shops.size() >= batchSize) {
+                flushShops(geoKey, shops, locations, count, total);
+            }
+        });
+        flushShops(geoKey, shops, locations, count, total);
+        log.info("店铺缓存预热进度：类型 {} 完成 {} 家，累计 {} 家", typeId, count.get(), total.get());
+    }
+
+    private void flushShops(String geoKey, Map<String, Shop> shops, Map<String, Point> locations, AtomicLong count,
+        AtomicLong total) {
+        if (shops.isEmpty()) {
+            return;
+        }
+        cacheClient.setWithLogicalExpire(shops, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        if (!locations.isEmpty()) {
+            // GEOADD key 经度 纬度 member [经度 纬度 member ...]，一批只需要一条命令
+            stringRedisTemplate.opsForGeo().add(geoKey, locations);
+        }
+        count.addAndGet(shops.size());
+        total.addAndGet(shops.size());
+        log.debug("店铺缓存预热进度：{} 已写入 {} 家", geoKey, count.get());
+        shops.clear();
+        locations.clear();
+    }
+
+    private void warmUpSeckillStock(AtomicLong total) {
+        Map<Long, Integer> stocks = new HashMap<>(batchSize * 2);
+        seckillVoucherMapper.streamUnfinished(context -> {
+            SeckillVoucher voucher = context.getResultObject();
+            stocks.put(voucher.getVoucherId(), voucher.getStock());
+            if (stocks.size() >= batchSize) {
+                flushSeckillStock(stocks, total);
+            }
+        });
+        flushSeckillStock(stocks, total);
+        log.info("秒杀库存预热完成：{} 张", total.get());
+    }
+
+    private void flushSeckillStock(Map<Long, Integer> stocks, AtomicLong total) {
+        if (stocks.isEmpty()) {
+            return;
+        }
+        // 只补齐 Redis 中没有库存的券（单 key 和分桶都没有），按配置的桶数拆分，已分桶的券不会多出一个单 key
+        seckillStockBuckets.restoreStocks(stocks);
+        total.addAndGet(stocks.size());
+        stocks.clear();
+    }
+}
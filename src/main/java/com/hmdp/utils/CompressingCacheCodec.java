@@ -0,0 +1,130 @@
+package com.hmdp.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * @author hwj
+ * @create: 2024-09-19 20:40
+ * @Description: 压缩编解码器（装饰其他编解码器）：编码结果超过阈值时用 LZ4 压缩，压缩后没有变小则保留原值。
+ *               压缩值以 0x8C 开头（JSON 以 { 或 " 开头，二进制编解码器的标记是 0x81、0x82），新旧格式可以共存：
+ *               [0x8C][类型：0 普通值、1 逻辑过期][原始长度：4 字节][LZ4 压缩数据]
+ */
+public class CompressingCacheCodec implements CacheCodec {
+
+    static final byte MAGIC_COMPRESSED = (byte)0x8C;
+
+    private static final byte KIND_VALUE = 0;
+    private static final byte KIND_REDIS_DATA = 1;
+
+    private static final int HEADER_LENGTH = 6;
+
+    private final CacheCodec delegate;
+
+    private final int thresholdBytes;
+
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    // 压缩后大小 / 原始大小
+    private final DistributionSummary ratio;
+
+    private final Counter savedBytes;
+
+    private final Timer compressTimer;
+
+    private final Timer decompressTimer;
+
+    /**
+     * @param delegate 实际负责序列化的编解码器
+     * @param thresholdBytes 编码结果达到该字节数才尝试压缩
+     */
+    public CompressingCacheCodec(CacheCodec delegate, int thresholdBytes, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.thresholdBytes = thresholdBytes;
+        this.ratio = DistributionSummary.builder("cache.compression.ratio").description("压缩后大小与原始大小的比值")
+            .scale(100).baseUnit("percent").register(meterRegistry);
+        this.savedBytes = Counter.builder("cache.compression.saved").description("压缩节省的字节数").baseUnit("bytes")
+            .register(meterRegistry);
+        this.compressTimer = Timer.builder("cache.compression").tag("op", "compress").register(meterRegistry);
+        this.decompressTimer = Timer.builder("cache.compression").tag("op", "decompress").register(meterRegistry);
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return compress(delegate.encode(value), KIND_VALUE);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        return delegate.decode(decompress(bytes), type);
+    }
+
+    @Override
+    public byte[] encodeRedisData(RedisData redisData) {
+        return compress(delegate.encodeRedisData(redisData), KIND_REDIS_DATA);
+    }
+
+    @Override
+    public RedisData decodeRedisData(byte[] bytes, Class<?> type) {
+        return delegate.decodeRedisData(decompress(bytes), type);
+    }
+
+    @Override
+    public boolean isRedisData(byte[] bytes) {
+        // 压缩值的头部记录了类型，不需要解压
+        if (bytes[0] == MAGIC_COMPRESSED) {
+            return bytes[1] == KIND_REDIS_DATA;
+        }
+        return delegate.isRedisData(bytes);
+    }
+
+    @Override
+    public RedisData toJson(byte[] bytes) {
+        return delegate.toJson(decompress(bytes));
+    }
+
+    private byte[] compress(byte[] bytes, byte kind) {
+        if (bytes.length < thresholdBytes) {
+            return bytes;
+        }
+        long begin = System.nanoTime();
+        byte[] out = new byte[HEADER_LENGTH + compressor.maxCompressedLength(bytes.length)];
+        int compressedLength = compressor.compress(bytes, 0, bytes.length, out, HEADER_LENGTH);
+        compressTimer.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+        ratio.record((double)compressedLength / bytes.length);
+        if (HEADER_LENGTH + compressedLength >= bytes.length) {
+            // 压缩后没有变小（比如已经是二进制格式的短文本），保留原值
+            return bytes;
+        }
+        savedBytes.increment(bytes.length - HEADER_LENGTH - compressedLength);
+        out[0] = MAGIC_COMPRESSED;
+        out[1] = kind;
+        out[2] = (byte)(bytes.length >>> 24);
+        out[3] = (byte)(bytes.length >>> 16);
+        out[4] = (byte)(bytes.length >>> 8);
+        out[5] = (byte)bytes.length;
+        return Arrays.copyOf(out, HEADER_LENGTH + compressedLength);
+    }
+
+    private byte[] decompress(byte[] bytes) {
+        if (bytes[0] != MAGIC_COMPRESSED) {
+            return bytes;
+        }
+        long begin = System.nanoTime();
+        int length = (bytes[2] & 0xFF) << 24 | (bytes[3] & 0xFF) << 16 | (bytes[4] & 0xFF) << 8 | (bytes[5] & 0xFF);
+        byte[] out = new byte[length];
+        decompressor.decompress(bytes, HEADER_LENGTH, out, 0, length);
+        decompressTimer.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+        return out;
+    }
+}
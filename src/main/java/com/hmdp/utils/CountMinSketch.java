@@ -0,0 +1,65 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+/**
+ * @author hwj
+ * @create: 2024-09-24 20:05
+ * @Description: Count-Min Sketch：用固定大小的计数器数组估算每个 key 的出现次数（只会高估，不会低估），内存与 key 的数量无关。
+ *               计数定时减半（衰减）后，估算值反映的是最近一段时间的频率
+ */
+public class CountMinSketch {
+
+    private static final int DEPTH = 4;
+
+    private final int width;
+
+    private final int mask;
+
+    // DEPTH 行计数器，第 i 行的第 j 个计数器下标为 i * width + j
+    private final AtomicLongArray counters;
+
+    /**
+     * @param width 每行的计数器个数，向上取整为 2 的幂（取模改为位运算）
+     */
+    public CountMinSketch(int width) {
+        this.width = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+        this.mask = this.width - 1;
+        this.counters = new AtomicLongArray(DEPTH * this.width);
+    }
+
+    // 计数加 count，返回加完后的估算值。每一行各用一个哈希函数（由同一个 128 位哈希的两半做双重哈希得到），取各行计数的最小值
+    public long increment(String key, long count) {
+        long[] hash = MurmurHash.hash128(key);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            min = Math.min(min, counters.addAndGet(index(hash, i), count));
+        }
+        return min;
+    }
+
+    public long estimate(String key) {
+        long[] hash = MurmurHash.hash128(key);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            min = Math.min(min, counters.get(index(hash, i)));
+        }
+        return min;
+    }
+
+    // 所有计数减半（期间并发的少量自增可能丢失，对估算没有影响）
+    public void decay() {
+        for (int i = 0; i < counters.length(); i++) {
+            long value = counters.get(i);
+            if (value > 0) {
+                counters.set(i, value >> 1);
+            }
+        }
+    }
+
+    private int index(long[] hash, int row) {
+        return row * width + (int)((hash[0] + row * hash[1]) & mask);
+    }
+}
@@ -0,0 +1,167 @@
+package com.hmdp.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author hwj
+ * @create: 2024-09-16 20:30
+ * @Description: 热点 key 探测：用 Count-Min Sketch 估算每个 key 的访问次数（内存固定，与 key 的数量无关），
+ *               估算值超过阈值的 key 进入 Top-K 候选集；计数定时减半（衰减），流量下降后 key 会自动退出 Top-K
+ */
+@Slf4j
+@Component
+public class HotKeyDetector {
+
+    @Value("${hmdp.cache.hot-key.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hmdp.cache.hot-key.width:4096}")
+    private int width;
+
+    @Value("${hmdp.cache.hot-key.top-k:32}")
+    private int topK;
+
+    @Value("${hmdp.cache.hot-key.threshold:100}")
+    private long threshold;
+
+    @Value("${hmdp.cache.hot-key.decay-seconds:10}")
+    private long decaySeconds;
+
+    private CountMinSketch sketch;
+
+    // 当前的热点 key 及其估算访问次数，写操作加锁，读操作（isHot）不加锁
+    private final Map<String, Long> hotKeys = new ConcurrentHashMap<>();
+
+    private final Object hotKeysLock = new Object();
+
+    private final ScheduledExecutorService decayExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "hot-key-decay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    private void init() {
+        sketch = new CountMinSketch(width);
+        if (enabled) {
+            decayExecutor.scheduleWithFixedDelay(this::decay, decaySeconds, decaySeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        decayExecutor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param key 缓存 key
+     * @return 记录后该 key 是否为热点
+     */
+    public boolean record(String key) {
+        return record(key, 1);
+    }
+
+    /**
+     * 一次记录多次访问（比如重启后从 L1 快照恢复访问次数）
+     *
+     * @param count 访问次数
+     * @return 记录后该 key 是否为热点
+     */
+    public boolean record(String key, long count) {
+        if (!enabled || count <= 0) {
+            return false;
+        }
+        long estimate = sketch.increment(key, count);
+        if (estimate < threshold) {
+            return false;
+        }
+        if (hotKeys.containsKey(key)) {
+            hotKeys.put(key, estimate);
+            return true;
+        }
+        synchronized (hotKeysLock) {
+            if (hotKeys.size() >= topK) {
+                // K 很小，直接遍历找出计数最小的 key，新 key 比它大才替换
+                Map.Entry<String, Long> min = null;
+                for (Map.Entry<String, Long> entry : hotKeys.entrySet()) {
+                    if (min == null || entry.getValue() < min.getValue()) {
+                        min = entry;
+                    }
+                }
+                if (min != null && min.getValue() >= estimate) {
+                    return false;
+                }
+                if (min != null) {
+                    hotKeys.remove(min.getKey());
+                }
+            }
+            hotKeys.put(key, estimate);
+        }
+        log.debug("发现热点 key：{}，估算访问次数：{}", key, estimate);
+        return true;
+    }
+
+    public boolean isHot(String key) {
+        return hotKeys.containsKey(key);
+    }
+
+    /**
+     * 估算 key 当前的访问次数（不计入本次）
+     */
+    public long estimate(String key) {
+        return enabled ? sketch.estimate(key) : 0;
+    }
+
+    /**
+     * 当前的热点 key，按估算访问次数从高到低排列
+     */
+    public Map<String, Long> topKeys() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(hotKeys.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : entries) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    // 所有计数减半，低于阈值的 key 退出热点集合（期间并发的少量自增可能丢失，对估算没有影响）
+    private void decay() {
+        try {
+            sketch.decay();
+            synchronized (hotKeysLock) {
+                hotKeys.replaceAll((key, count) -> count >> 1);
+                hotKeys.entrySet().removeIf(entry -> {
+                    boolean cooled = entry.getValue() < threshold;
+                    if (cooled) {
+                        log.debug("热点 key 降级：{}", entry.getKey());
+                    }
+                    return cooled;
+                });
+            }
+        } catch (Exception e) {
+            log.error("热点 key 计数衰减失败", e);
+        }
+    }
+}
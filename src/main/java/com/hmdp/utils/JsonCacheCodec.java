@@ -0,0 +1,125 @@
+package com.hmdp.utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import cn.hutool.json.JSONConfig;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+
+/**
+ * @author hwj
+ * @create: 2024-09-10 20:20
+ * @Description: JSON 编解码（Hutool），与之前直接用 JSONUtil 写入的缓存格式完全兼容。
+ *               时间按 ISO 格式写入（和 Spring MVC 的 Jackson 输出一致），缓存中的 JSON 可以原样作为响应返回；
+ *               之前按毫秒时间戳写入的旧值仍然可以解码
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    private static final byte[] EXPIRE_TIME_FIELD = "\"expireTime\"".getBytes(StandardCharsets.UTF_8);
+
+    private static final JSONConfig JSON_CONFIG = JSONConfig.create().setDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value, JSON_CONFIG).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        return JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), type);
+    }
+
+    @Override
+    public byte[] encodeRedisData(RedisData redisData) {
+        return JSONUtil.toJsonStr(redisData, JSON_CONFIG).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public RedisData decodeRedisData(byte[] bytes, Class<?> type) {
+        // 只解析一次 JSON，data 字段直接转成目标类型（之前是 RedisData -> JSONObject -> bean 两次转换）
+        JSONObject json = JSONUtil.parseObj(new String(bytes, StandardCharsets.UTF_8));
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(json.get("expireTime", LocalDateTime.class));
+        redisData.setRebuildCost(json.getLong("rebuildCost"));
+        redisData.setData(json.getBean("data", type));
+        return redisData;
+    }
+
+    @Override
+    public boolean isRedisData(byte[] bytes) {
+        // 先按字节查找字段名，大部分普通缓存值在这一步就能排除，不需要解析 JSON
+        if (!contains(bytes, EXPIRE_TIME_FIELD)) {
+            return false;
+        }
+        JSONObject json = JSONUtil.parseObj(new String(bytes, StandardCharsets.UTF_8));
+        return json.containsKey("expireTime") && json.containsKey("data");
+    }
+
+    @Override
+    public RedisData toJson(byte[] bytes) {
+        RedisData redisData = new RedisData();
+        if (!contains(bytes, EXPIRE_TIME_FIELD)) {
+            // 普通缓存值本身就是数据的 JSON
+            redisData.setData(bytes);
+            return redisData;
+        }
+        // 逻辑过期格式：用流式解析只取出 expireTime 和 data 字段的位置，不创建对象
+        try (JsonParser parser = JSON_FACTORY.createParser(bytes)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            int dataStart = -1;
+            int dataEnd = -1;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("expireTime".equals(name)) {
+                    redisData.setExpireTime(token == JsonToken.VALUE_NUMBER_INT
+                        ? LocalDateTime.ofInstant(Instant.ofEpochMilli(parser.getLongValue()), ZoneId.systemDefault())
+                        : LocalDateTime.parse(parser.getText()));
+                } else if ("data".equals(name)) {
+                    dataStart = (int)parser.getTokenLocation().getByteOffset();
+                    parser.skipChildren();
+                    dataEnd = (int)parser.getCurrentLocation().getByteOffset();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (redisData.getExpireTime() == null || dataStart < 0) {
+                // 只是数据中恰好有 expireTime 字段
+                redisData.setExpireTime(null);
+                redisData.setData(bytes);
+                return redisData;
+            }
+            byte[] data = new byte[dataEnd - dataStart];
+            System.arraycopy(bytes, dataStart, data, 0, data.length);
+            redisData.setData(data);
+            return redisData;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("缓存值不是合法的 JSON", e);
+        }
+    }
+
+    private static boolean contains(byte[] bytes, byte[] target) {
+        outer:
+        for (int i = 0; i <= bytes.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (bytes[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,149 @@
+package com.hmdp.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author hwj
+ * @create: 2024-09-02 21:40
+ * @Description: 进程内的一级缓存（L1），分段 LRU + TTL，容量有上限，超出后淘汰最久未访问的条目
+ */
+public class LocalCache<V> {
+
+    // 分段数（2 的幂），分段加锁以降低并发读写时的锁竞争
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment<V>[] segments;
+
+    private final long ttlMillis;
+
+    @SuppressWarnings("unchecked")
+    public LocalCache(int maxSize, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.segments = new Segment[SEGMENT_COUNT];
+        int segmentCapacity = Math.max(1, maxSize / SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment<>(segmentCapacity);
+        }
+    }
+
+    public V get(String key) {
+        return segmentFor(key).get(key, System.currentTimeMillis());
+    }
+
+    public void put(String key, V value) {
+        segmentFor(key).put(key, value, System.currentTimeMillis() + ttlMillis);
+    }
+
+    /**
+     * 按指定的过期时间放入（比如读回快照时沿用条目原来的过期时间），已过期的条目不放入，存活时间最多为 ttl
+     */
+    public void put(String key, V value, long expireAt) {
+        long now = System.currentTimeMillis();
+        if (expireAt > now) {
+            segmentFor(key).put(key, value, Math.min(expireAt, now + ttlMillis));
+        }
+    }
+
+    public void invalidate(String key) {
+        segmentFor(key).remove(key);
+    }
+
+    public void invalidateAll() {
+        for (Segment<V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public interface EntryConsumer<V> {
+        void accept(String key, V value, long expireAt);
+    }
+
+    /**
+     * 遍历所有未过期的条目及其过期时间（按分段复制后遍历，不会长时间持有锁）
+     */
+    public void forEach(EntryConsumer<V> action) {
+        long now = System.currentTimeMillis();
+        for (Segment<V> segment : segments) {
+            segment.copy(now).forEach((key, entry) -> action.accept(key, entry.value, entry.expireAt));
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment<V> segmentFor(String key) {
+        int h = key.hashCode();
+        // 扰动一下高位，避免前缀相同的 key 都落到同一个分段
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENT_COUNT - 1)];
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expireAt;
+
+        private Entry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static class Segment<V> {
+        private final LinkedHashMap<String, Entry<V>> map;
+
+        private Segment(int capacity) {
+            // accessOrder = true，按访问顺序排列，头部即为最久未访问的条目
+            this.map = new LinkedHashMap<String, Entry<V>>(capacity, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        private synchronized V get(String key, long now) {
+            Entry<V> entry = map.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expireAt <= now) {
+                // 已过期，惰性删除
+                map.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+
+        private synchronized void put(String key, V value, long expireAt) {
+            map.put(key, new Entry<>(value, expireAt));
+        }
+
+        private synchronized void remove(String key) {
+            map.remove(key);
+        }
+
+        private synchronized void clear() {
+            map.clear();
+        }
+
+        private synchronized Map<String, Entry<V>> copy(long now) {
+            Map<String, Entry<V>> copy = new LinkedHashMap<>(map.size() * 2);
+            for (Map.Entry<String, Entry<V>> entry : map.entrySet()) {
+                if (entry.getValue().expireAt > now) {
+                    copy.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return copy;
+        }
+
+        private synchronized int size() {
+            return map.size();
+        }
+    }
+}
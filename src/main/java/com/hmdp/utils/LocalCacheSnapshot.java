@@ -0,0 +1,148 @@
+package com.hmdp.utils;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author hwj
+ * @create: 2024-09-23 20:10
+ * @Description: L1 快照文件：正常停机时把 L1 中的条目和访问次数写入本地文件，启动时读回，避免滚动重启后每个节点都从冷缓存开始。
+ *               读写都通过内存映射完成，条目按长度前缀顺序排列：
+ *               头部 [魔数：4 字节][版本：4 字节][写入时间：8 字节][条目数：4 字节]，
+ *               每个条目 [key 长度：4 字节][key（UTF-8）][value 长度：4 字节][value][访问次数：8 字节][过期时间：8 字节]。
+ *               条目保存的是在 L1 中原来的过期时间（毫秒时间戳），读回时已过期的条目直接跳过，
+ *               读回的条目不会比停机前存活得更久，L1 的数据最多落后 ttl-seconds 秒的约束在重启前后都成立
+ */
+public final class LocalCacheSnapshot {
+
+    private static final int MAGIC = 0x484D4331;
+
+    private static final int VERSION = 2;
+
+    private static final int HEADER_LENGTH = 4 + 4 + 8 + 4;
+
+    private static final int ENTRY_OVERHEAD = 4 + 4 + 8 + 8;
+
+    private LocalCacheSnapshot() {
+    }
+
+    public interface EntryConsumer {
+        void accept(String key, byte[] value, long frequency, long expireAt);
+    }
+
+    /**
+     * 快照中的一个条目
+     */
+    public static final class Entry {
+        private final byte[] key;
+        private final byte[] value;
+        private final long frequency;
+        private final long expireAt;
+
+        public Entry(String key, byte[] value, long frequency, long expireAt) {
+            this(key.getBytes(StandardCharsets.UTF_8), value, frequency, expireAt);
+        }
+
+        private Entry(byte[] key, byte[] value, long frequency, long expireAt) {
+            this.key = key;
+            this.value = value;
+            this.frequency = frequency;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * 写入快照：先写临时文件，写完后原子替换，停机过程中被打断也不会留下不完整的快照
+     */
+    public static void write(Path path, List<Entry> entries) throws IOException {
+        long size = HEADER_LENGTH;
+        for (Entry entry : entries) {
+            size += ENTRY_OVERHEAD + entry.key.length + entry.value.length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("L1 快照超过 2GB，放弃写入");
+        }
+        Path dir = path.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).putInt(entries.size());
+            for (Entry entry : entries) {
+                buffer.putInt(entry.key.length).put(entry.key);
+                buffer.putInt(entry.value.length).put(entry.value);
+                buffer.putLong(entry.frequency).putLong(entry.expireAt);
+            }
+            buffer.force();
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 读取快照，文件不存在、格式不对或者写入时间早于 maxAgeMillis 之前时不读取任何条目，已过期的条目会被跳过
+     *
+     * @return 读取的条目数
+     */
+    public static int read(Path path, long maxAgeMillis, EntryConsumer consumer) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return 0;
+        }
+        List<Entry> entries;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_LENGTH || size > Integer.MAX_VALUE) {
+                return 0;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return 0;
+            }
+            if (System.currentTimeMillis() - buffer.getLong() > maxAgeMillis) {
+                // 停机太久，快照中的数据可能已经被修改过（期间的失效广播收不到），直接丢弃
+                return 0;
+            }
+            int count = buffer.getInt();
+            entries = new ArrayList<>(Math.max(0, Math.min(count, (int)(size / ENTRY_OVERHEAD))));
+            for (int i = 0; i < count; i++) {
+                if (buffer.remaining() < ENTRY_OVERHEAD) {
+                    throw new IOException("L1 快照已损坏");
+                }
+                byte[] key = new byte[checkedLength(buffer.getInt(), buffer)];
+                buffer.get(key);
+                byte[] value = new byte[checkedLength(buffer.getInt(), buffer)];
+                buffer.get(value);
+                entries.add(new Entry(key, value, buffer.getLong(), buffer.getLong()));
+            }
+        }
+        // 先完整校验再交给调用方，损坏的快照不会只加载一半
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (Entry entry : entries) {
+            if (entry.expireAt <= now) {
+                continue;
+            }
+            consumer.accept(new String(entry.key, StandardCharsets.UTF_8), entry.value, entry.frequency,
+                entry.expireAt);
+            count++;
+        }
+        return count;
+    }
+
+    private static int checkedLength(int length, MappedByteBuffer buffer) throws IOException {
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("L1 快照已损坏");
+        }
+        return length;
+    }
+}
@@ -0,0 +1,219 @@
+package com.hmdp.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author hwj
+ * @create: 2024-09-06 22:30
+ * @Description: 布隆过滤器，位图存放在 Redis（所有节点共享），同时在本地内存保留一份镜像，
+ *               判断 id 是否可能存在时只查本地镜像，不产生任何 IO
+ */
+@Slf4j
+public class RedisBloomFilter {
+
+    private final String redisKey;
+
+    private final String channel;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 位数组长度
+    private final long numBits;
+
+    // 哈希函数个数
+    private final int numHashes;
+
+    // 本地镜像，每个 long 存 64 位
+    private final AtomicLongArray localBits;
+
+    // 初始化完成前放行所有请求，避免启动阶段误判为不存在
+    private volatile boolean ready = false;
+
+    private final ScheduledExecutorService reloadExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "bloom-reload");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param redisKey 位图在 Redis 中的 key
+     * @param expectedInsertions 预计元素数量
+     * @param fpp 期望的误判率
+     */
+    public RedisBloomFilter(String redisKey, long expectedInsertions, double fpp,
+        StringRedisTemplate stringRedisTemplate) {
+        this.redisKey = redisKey;
+        this.channel = redisKey + ":add";
+        this.stringRedisTemplate = stringRedisTemplate;
+        // m = -n * ln(p) / (ln2)^2，k = m / n * ln2
+        long bits = (long)(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        // 按 64 位对齐，方便和 Redis 位图按字节互相转换
+        this.numBits = Math.max(64, (bits + 63) / 64 * 64);
+        this.numHashes = Math.max(1, (int)Math.round((double)numBits / expectedInsertions * Math.log(2)));
+        this.localBits = new AtomicLongArray((int)(numBits / 64));
+    }
+
+    /**
+     * 订阅其他节点新增元素的广播，并定时从 Redis 同步位图兜底（防止丢失广播消息）
+     */
+    public void subscribe(RedisMessageListenerContainer container, long reloadPeriodMinutes) {
+        container.addMessageListener(
+            (message, pattern) -> setLocal(new String(message.getBody(), StandardCharsets.UTF_8)),
+            new ChannelTopic(channel));
+        reloadExecutor.scheduleWithFixedDelay(this::reload, reloadPeriodMinutes, reloadPeriodMinutes,
+            TimeUnit.MINUTES);
+    }
+
+    /**
+     * 判断元素是否可能存在：返回 false 时一定不存在，返回 true 时可能存在
+     */
+    public boolean mightContain(Object id) {
+        if (!ready) {
+            return true;
+        }
+        for (long index : indexes(id.toString())) {
+            if ((localBits.get((int)(index >>> 6)) & (1L << (index & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 新增元素：写本地镜像、写 Redis 位图，并广播给其他节点
+     */
+    public void put(Object id) {
+        String member = id.toString();
+        long[] indexes = setLocal(member);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>)connection -> {
+            byte[] rawKey = redisKey.getBytes(StandardCharsets.UTF_8);
+            for (long index : indexes) {
+                connection.setBit(rawKey, index, true);
+            }
+            return null;
+        });
+        stringRedisTemplate.convertAndSend(channel, member);
+    }
+
+    /**
+     * 根据全量数据重建：先在本地计算位图，再与 Redis 中的位图按位或合并（不会覆盖其他节点新增的位），
+     * 最后把合并结果同步回本地
+     */
+    public void rebuild(Iterable<?> ids) {
+        int count = 0;
+        for (Object id : ids) {
+            setLocal(id.toString());
+            count++;
+        }
+        String tmpKey = tmpKeyPrefix() + ":tmp:" + Thread.currentThread().getId() + ":" + System.nanoTime();
+        byte[] localBytes = toRedisBytes();
+        stringRedisTemplate.execute((RedisCallback<Object>)connection -> {
+            byte[] rawKey = redisKey.getBytes(StandardCharsets.UTF_8);
+            byte[] rawTmpKey = tmpKey.getBytes(StandardCharsets.UTF_8);
+            connection.set(rawTmpKey, localBytes);
+            connection.bitOp(RedisStringCommands.BitOperation.OR, rawKey, rawKey, rawTmpKey);
+            connection.del(rawTmpKey);
+            return null;
+        });
+        reload();
+        ready = true;
+        log.info("布隆过滤器 {} 重建完成，元素数：{}，位数：{}，哈希函数个数：{}", redisKey, count, numBits, numHashes);
+    }
+
+    /**
+     * 从 Redis 拉取位图合并到本地镜像
+     */
+    public void reload() {
+        try {
+            byte[] bytes = stringRedisTemplate.execute(
+                (RedisCallback<byte[]>)connection -> connection.get(redisKey.getBytes(StandardCharsets.UTF_8)));
+            if (bytes == null) {
+                return;
+            }
+            int words = Math.min(localBits.length(), (bytes.length + 7) / 8);
+            for (int i = 0; i < words; i++) {
+                long word = 0;
+                for (int b = 0; b < 8; b++) {
+                    int byteIndex = i * 8 + b;
+                    if (byteIndex >= bytes.length) {
+                        break;
+                    }
+                    // Redis 位图中每个字节的最高位对应最小的 offset
+                    word |= (long)(Integer.reverse(bytes[byteIndex] & 0xFF) >>> 24) << (b * 8);
+                }
+                orWord(i, word);
+            }
+        } catch (Exception e) {
+            log.error("同步布隆过滤器 {} 失败", redisKey, e);
+        }
+    }
+
+    public void shutdown() {
+        reloadExecutor.shutdownNow();
+    }
+
+    // 集群模式下 BITOP 的所有 key 必须在同一个槽：不带 hash tag 的 key 按整个 key 计算槽，
+    // 所以把整个 key 作为临时 key 的 hash tag（bloom:shop -> {bloom:shop}:tmp:...），两者落在同一个槽
+    private String tmpKeyPrefix() {
+        int start = redisKey.indexOf('{');
+        if (start >= 0 && redisKey.indexOf('}', start + 2) > 0) {
+            // 已经带了 hash tag，直接沿用
+            return redisKey;
+        }
+        return "{" + redisKey + "}";
+    }
+
+    private long[] setLocal(String member) {
+        long[] indexes = indexes(member);
+        for (long index : indexes) {
+            orWord((int)(index >>> 6), 1L << (index & 63));
+        }
+        return indexes;
+    }
+
+    private void orWord(int i, long mask) {
+        long prev;
+        do {
+            prev = localBits.get(i);
+            if ((prev | mask) == prev) {
+                return;
+            }
+        } while (!localBits.compareAndSet(i, prev, prev | mask));
+    }
+
+    // 双重哈希：用 128 位 MurmurHash 的高低 64 位生成 k 个位置
+    private long[] indexes(String member) {
+        long[] hash = MurmurHash.hash128(member.getBytes(StandardCharsets.UTF_8));
+        long[] indexes = new long[numHashes];
+        long combined = hash[0];
+        for (int i = 0; i < numHashes; i++) {
+            indexes[i] = (combined & Long.MAX_VALUE) % numBits;
+            combined += hash[1];
+        }
+        return indexes;
+    }
+
+    private byte[] toRedisBytes() {
+        byte[] bytes = new byte[(int)(numBits / 8)];
+        for (int i = 0; i < localBits.length(); i++) {
+            long word = localBits.get(i);
+            for (int b = 0; b < 8; b++) {
+                bytes[i * 8 + b] = (byte)(Integer.reverse((int)(word >>> (b * 8)) & 0xFF) >>> 24);
+            }
+        }
+        return bytes;
+    }
+}
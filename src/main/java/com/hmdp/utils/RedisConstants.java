@@ -2,21 +2,44 @@ package com.hmdp.utils;
 
 public class RedisConstants {
     public static final String LOGIN_CODE_KEY = "login:code:";
-    public static final Long LOGIN_CODE_TTL = 2L;
+    public static final long LOGIN_CODE_TTL = 2L;
     public static final String LOGIN_USER_KEY = "login:token:";
-    public static final Long LOGIN_USER_TTL = 30L;
+    public static final long LOGIN_USER_TTL = 30L;
 
-    public static final Long CACHE_NULL_TTL = 2L;
+    public static final long CACHE_NULL_TTL = 2L;
 
-    public static final Long CACHE_SHOP_TTL = 30L;
+    public static final long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
-    public static final String CACHE_SHOPTYPE_KEY = "cache:shop-type:list";
-    public static final Long CACHE_SHOPTYPE_TTL = 3L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+    public static final long CACHE_USER_TTL = 30L;
+    // 店铺类型列表整体序列化成一个值（之前是 cache:shop-type:list 的 LIST，换了 key 避免新旧实例同时运行时类型冲突）
+    public static final String CACHE_SHOPTYPE_KEY = "cache:shop-type:snapshot";
+    public static final String CACHE_SHOPTYPE_VERSION_KEY = "cache:shop-type:version";
+    public static final long CACHE_SHOPTYPE_TTL = 3L;
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+    public static final long CACHE_BLOG_TTL = 30L;
 
-    public static final String LOCK_SHOP_KEY = "lock:shop:";
-    public static final Long LOCK_SHOP_TTL = 10L;
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    // 命名空间版本号（key 后缀为缓存前缀，比如 cache:ns:version:cache:shop:）及其变更广播
+    public static final String CACHE_NAMESPACE_VERSION_KEY = "cache:ns:version:";
+    public static final String CACHE_NAMESPACE_CHANNEL = "cache:ns:invalidate";
+
+    public static final String BLOOM_SHOP_KEY = "bloom:shop";
+    public static final long BLOOM_RELOAD_PERIOD = 5L;
+
+    public static final long LOCK_SHOP_TTL = 10L;
+    // 缓存重建互斥锁，后面拼接完整的缓存 key（CacheClient#lockKey）
+    public static final String LOCK_CACHE_KEY = "lock:";
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    // 一人一单的用户集合（seckill.lua 中的 key 与此一致）
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    // 分桶库存模式下秒杀券的桶数
+    public static final String SECKILL_BUCKETS_KEY = "seckill:buckets:";
+    // 秒杀订单消息队列（seckill.lua 中 XADD 的 key 与此一致）
+    public static final String SECKILL_ORDER_STREAM = "stream.orders";
+    // 秒杀券售罄 / 补充库存广播
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
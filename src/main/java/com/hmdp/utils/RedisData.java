@@ -7,5 +7,7 @@ import java.time.LocalDateTime;
 @Data
 public class RedisData {
     private LocalDateTime expireTime;
+    // 上次重建缓存（查库）的耗时，单位毫秒，用于概率提前刷新
+    private Long rebuildCost;
     private Object data;
 }
@@ -33,16 +33,29 @@ public class RedisGlobalIdGenerator {
     public long nextId(String keyPrefix) {
         // 1.获取时间戳（）
         LocalDateTime now = LocalDateTime.now();
-        long nowSeconds = now.toEpochSecond(ZoneOffset.UTC);
-        long timeStamp = nowSeconds - BEGIN_TIMESTAMP;
 
         // 2.获取序列号
+        // 组装redis key并获取redis自增value的值
+        long increment = stringRedisTemplate.opsForValue().increment(sequenceKey(keyPrefix, now));
+        return timestampBits(now) | increment;
+    }
+
+    /**
+     * 序列号的 key（每天一个），在 Lua 脚本中自增序列号时使用
+     */
+    public String sequenceKey(String keyPrefix, LocalDateTime now) {
         // 获取当前日期
         String nowFormat = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        // 组装redis key并获取redis自增value的值
-        String key = "icr:" + keyPrefix + ":" + nowFormat;
-        long increment = stringRedisTemplate.opsForValue().increment(key);
-        return timeStamp << COUNT_BITS | increment;
+        return "icr:" + keyPrefix + ":" + nowFormat;
+    }
+
+    /**
+     * ID 的时间戳部分（已左移到高位），与序列号按位或即为完整的 ID
+     */
+    public long timestampBits(LocalDateTime now) {
+        long nowSeconds = now.toEpochSecond(ZoneOffset.UTC);
+        long timeStamp = nowSeconds - BEGIN_TIMESTAMP;
+        return timeStamp << COUNT_BITS;
     }
 
 }
@@ -0,0 +1,124 @@
+package com.hmdp.utils;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author hwj
+ * @create: 2024-09-27 20:10
+ * @Description: 秒杀券售罄标记（每个节点一份）：seckill.lua 返回库存不足后在本地标记该券已售罄并广播给其他节点，
+ *               之后的秒杀请求直接在内存中返回“库存不足”，不再生成订单 id、执行 Lua 脚本。
+ *               库存从 0 变回正数时（新建券、启动预热补齐库存、分桶秒杀退回库存）由 SeckillStockBuckets 清除标记并广播；
+ *               标记超过 recheck-seconds 后失效，下一个请求重新执行脚本确认，
+ *               即使漏掉了广播或者库存是直接在 Redis 中修改的，也最多只会多拒绝这么长时间
+ */
+@Slf4j
+@Component
+public class SeckillSoldOutRegistry {
+
+    // 广播内容：售罄为 "+{voucherId}"，补充库存为 "-{voucherId}"
+    private static final char SOLD_OUT = '+';
+
+    private static final char REPLENISHED = '-';
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${hmdp.seckill.sold-out.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hmdp.seckill.sold-out.recheck-seconds:5}")
+    private long recheckSeconds;
+
+    // voucherId -> 标记失效的时间（毫秒时间戳）
+    private final Map<Long, Long> soldOut = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        if (!enabled) {
+            return;
+        }
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            Long voucherId = Long.valueOf(body.substring(1));
+            if (body.charAt(0) == SOLD_OUT) {
+                markLocal(voucherId);
+            } else {
+                soldOut.remove(voucherId);
+            }
+        }, new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+    }
+
+    /**
+     * 判断秒杀券是否已售罄（只查本地内存）
+     */
+    public boolean isSoldOut(Long voucherId) {
+        if (!enabled) {
+            return false;
+        }
+        Long expireAt = soldOut.get(voucherId);
+        if (expireAt == null) {
+            return false;
+        }
+        if (expireAt < System.currentTimeMillis()) {
+            // 到期后放行，由下一次 Lua 脚本的结果决定是否重新标记
+            soldOut.remove(voucherId, expireAt);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 标记售罄并广播，本节点已经标记过（其他请求或广播）时不再重复广播
+     */
+    public void markSoldOut(Long voucherId) {
+        if (enabled && soldOut.put(voucherId, expireAt()) == null) {
+            publish(SOLD_OUT, voucherId);
+        }
+    }
+
+    /**
+     * 补充库存后清除售罄标记并广播
+     */
+    public void clear(Long voucherId) {
+        if (enabled) {
+            soldOut.remove(voucherId);
+            publish(REPLENISHED, voucherId);
+        }
+    }
+
+    private void markLocal(Long voucherId) {
+        soldOut.put(voucherId, expireAt());
+    }
+
+    private long expireAt() {
+        return System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(recheckSeconds);
+    }
+
+    private void publish(char type, Long voucherId) {
+        try {
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, type + voucherId.toString());
+        } catch (Exception e) {
+            // 广播失败不影响本节点，其他节点最多多执行几次 Lua 脚本
+            log.warn("广播秒杀券 {} 的售罄状态失败", voucherId, e);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.hmdp.utils;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_BUCKETS_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Resource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import cn.hutool.core.util.StrUtil;
+import io.lettuce.core.RedisCommandInterruptedException;
+import io.lettuce.core.RedisCommandTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author hwj
+ * @create: 2024-09-28 20:15
+ * @Description: 秒杀库存分桶：把一张券的库存拆到 N 个桶（seckill:stock:{voucherId:桶号}），一人一单的用户集合同样按桶拆分
+ *               （seckill:order:{voucherId:桶号}），集群模式下各桶落在不同的槽上，不再由一个 key 承担整张券的全部流量。
+ *               用户固定属于 userId % N 号桶，在该桶中判断是否重复下单并扣库存；本桶库存不足时从随机位置开始依次到其他桶借一个库存，
+ *               全部借不到才算售罄。券的桶数记录在 seckill:buckets:{voucherId}，没有该 key 的券按原来的单 key 方式处理
+ */
+@Slf4j
+@Component
+public class SeckillStockBuckets {
+
+    // 本地缓存桶数的时间，券的桶数创建后不再变化，过期只是为了识别之后新建的券
+    private static final long BUCKET_COUNT_TTL_SECONDS = 10;
+
+    private static final DefaultRedisScript<Long> SECKILL_BUCKET_SCRIPT;
+
+    private static final DefaultRedisScript<Long> BORROW_SCRIPT;
+
+    static {
+        SECKILL_BUCKET_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_BUCKET_SCRIPT.setLocation(new ClassPathResource("seckill-bucket.lua"));
+        SECKILL_BUCKET_SCRIPT.setResultType(Long.class);
+        BORROW_SCRIPT = new DefaultRedisScript<>();
+        BORROW_SCRIPT.setLocation(new ClassPathResource("seckill-bucket-borrow.lua"));
+        BORROW_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisGlobalIdGenerator redisGlobalIdGenerator;
+
+    @Resource
+    private SeckillSoldOutRegistry seckillSoldOutRegistry;
+
+    // 新建秒杀券时的库存桶数，1 表示不分桶
+    @Value("${hmdp.seckill.stock.buckets:1}")
+    private int buckets;
+
+    private final LocalCache<Integer> bucketCounts =
+        new LocalCache<>(1024, TimeUnit.SECONDS.toMillis(BUCKET_COUNT_TTL_SECONDS));
+
+    /**
+     * 写入秒杀券的库存：按配置的桶数平均拆分（余数分给前面的桶），库存少于桶数时桶数减少到库存数，并清除各节点的售罄标记
+     */
+    public void setStock(Long voucherId, int stock) {
+        int n = bucketCountFor(stock);
+        if (n == 1) {
+            stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucherId, String.valueOf(stock));
+            stringRedisTemplate.delete(SECKILL_BUCKETS_KEY + voucherId);
+        } else {
+            // 集群模式下各桶位于不同的槽，逐个写入；桶数最后写入，其他节点看到桶数时各桶的库存已经就绪
+            for (int i = 0; i < n; i++) {
+                stringRedisTemplate.opsForValue().set(stockKey(voucherId, i), String.valueOf(bucketStock(stock, n, i)));
+            }
+            stringRedisTemplate.opsForValue().set(SECKILL_BUCKETS_KEY + voucherId, String.valueOf(n));
+        }
+        bucketCounts.put(voucherId.toString(), n);
+        seckillSoldOutRegistry.clear(voucherId);
+    }
+
+    /**
+     * 补齐秒杀券的库存（启动预热用）：单 key 库存和桶数都不存在（比如 Redis 数据丢失后）的券按 setStock 的方式拆分写入，
+     * 已经有库存的券不动。秒杀进行中库存只在 Redis 里扣减，数据库的值可能是旧的，所以各 key 都用 SETNX，
+     * 多个节点同时预热也不会覆盖已有的值。补齐了库存的券清除各节点的售罄标记（Redis 数据丢失期间可能被标记为售罄）
+     *
+     * @param stocks 秒杀券 id -> 数据库中的库存
+     * @return 补齐了库存的秒杀券
+     */
+    public List<Long> restoreStocks(Map<Long, Integer> stocks) {
+        List<Long> voucherIds = new ArrayList<>(stocks.keySet());
+        // 1.一次 pipeline 查出各券的桶数、单 key 库存是否存在
+        List<Object> exists = stringRedisTemplate.executePipelined((RedisCallback<Object>)connection -> {
+            for (Long voucherId : voucherIds) {
+                connection.exists(raw(SECKILL_BUCKETS_KEY + voucherId));
+                connection.exists(raw(SECKILL_STOCK_KEY + voucherId));
+            }
+            return null;
+        });
+        List<Long> missing = new ArrayList<>();
+        for (int i = 0; i < voucherIds.size(); i++) {
+            if (!Boolean.TRUE.equals(exists.get(2 * i)) && !Boolean.TRUE.equals(exists.get(2 * i + 1))) {
+                missing.add(voucherIds.get(i));
+            }
+        }
+        if (missing.isEmpty()) {
+            return missing;
+        }
+        // 2.按配置的桶数拆分写入，同一张券的各桶库存先于桶数写入
+        stringRedisTemplate.executePipelined((RedisCallback<Object>)connection -> {
+            for (Long voucherId : missing) {
+                int stock = stocks.get(voucherId);
+                int n = bucketCountFor(stock);
+                if (n == 1) {
+                    connection.setNX(raw(SECKILL_STOCK_KEY + voucherId), raw(String.valueOf(stock)));
+                    continue;
+                }
+                for (int i = 0; i < n; i++) {
+                    connection.setNX(raw(stockKey(voucherId, i)), raw(String.valueOf(bucketStock(stock, n, i))));
+                }
+                connection.setNX(raw(SECKILL_BUCKETS_KEY + voucherId), raw(String.valueOf(n)));
+            }
+            return null;
+        });
+        for (Long voucherId : missing) {
+            // 本地缓存的桶数可能是写入前读到的“不分桶”
+            bucketCounts.invalidate(voucherId.toString());
+            if (stocks.get(voucherId) > 0) {
+                seckillSoldOutRegistry.clear(voucherId);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * 秒杀券的库存桶数，1 表示没有分桶
+     */
+    public int bucketCount(Long voucherId) {
+        String cacheKey = voucherId.toString();
+        Integer count = bucketCounts.get(cacheKey);
+        if (count == null) {
+            String value = stringRedisTemplate.opsForValue().get(SECKILL_BUCKETS_KEY + voucherId);
+            count = StrUtil.isEmpty(value) ? 1 : Integer.parseInt(value);
+            bucketCounts.put(cacheKey, count);
+        }
+        return count;
+    }
+
+    /**
+     * 分桶模式下的秒杀：判断一人一单、扣库存，成功后生成订单 id 并把订单发送到消息队列
+     *
+     * @return [0, 订单 id] 成功，[1] 库存不足，[2] 重复下单
+     */
+    public List<Long> seckill(Long voucherId, int n, Long userId) {
+        int home = (int)Math.floorMod(userId, (long)n);
+        String user = userId.toString();
+        Long result = stringRedisTemplate.execute(SECKILL_BUCKET_SCRIPT,
+            Arrays.asList(stockKey(voucherId, home), orderKey(voucherId, home)), user);
+        int r = result.intValue();
+        if (r == 2) {
+            return Collections.singletonList(2L);
+        }
+        int taken = home;
+        if (r == 3) {
+            taken = borrow(voucherId, n, home);
+            if (taken < 0) {
+                // 所有桶都没有库存，删除脚本中预先记录的用户，补充库存后该用户还可以下单
+                stringRedisTemplate.opsForSet().remove(orderKey(voucherId, home), user);
+                return Collections.singletonList(1L);
+            }
+        }
+        // 各桶与序列号、消息队列不在同一个槽，不能在脚本里生成订单 id 和 XADD，扣库存成功后再生成和发送
+        long orderId;
+        try {
+            orderId = redisGlobalIdGenerator.nextId("order");
+        } catch (RuntimeException e) {
+            // 订单还没有发出，退回库存和用户（序列号即使已经自增也只是跳过一个号）
+            log.warn("生成秒杀订单 id 失败，退回秒杀券 {} 的库存", voucherId, e);
+            rollback(voucherId, taken, home, user);
+            throw e;
+        }
+        Map<String, String> order = new HashMap<>(4);
+        order.put("userId", user);
+        order.put("voucherId", voucherId.toString());
+        order.put("id", String.valueOf(orderId));
+        try {
+            stringRedisTemplate.opsForStream().add(StreamRecords.newRecord().in(SECKILL_ORDER_STREAM).ofMap(order));
+        } catch (RuntimeException e) {
+            if (isOutcomeUnknown(e)) {
+                // 命令已经发出却没有等到回复，XADD 可能已经执行，订单会被正常消费，这时退回库存会超卖；
+                // 宁可少卖一个，不退回，记录下来供对账
+                log.error("发送秒杀订单消息结果未知，不退回库存，秒杀券：{}，用户：{}，订单：{}", voucherId, user, orderId, e);
+                throw e;
+            }
+            // 其他异常都说明 XADD 没有执行，退回库存和用户，避免库存被扣掉却没有订单
+            log.warn("发送秒杀订单消息失败，退回秒杀券 {} 的库存", voucherId, e);
+            rollback(voucherId, taken, home, user);
+            throw e;
+        }
+        return Arrays.asList(0L, orderId);
+    }
+
+    private void rollback(Long voucherId, int taken, int home, String user) {
+        Long stock = stringRedisTemplate.opsForValue().increment(stockKey(voucherId, taken));
+        stringRedisTemplate.opsForSet().remove(orderKey(voucherId, home), user);
+        if (stock != null && stock == 1) {
+            // 桶的库存从 0 变回 1，其他请求可能已经把券标记为售罄
+            seckillSoldOutRegistry.clear(voucherId);
+        }
+    }
+
+    // 结果未知：命令已经发出，但在等待回复时超时或者线程被中断（Lettuce 断线重连后会重发未完成的命令，同样表现为超时）。
+    // 其他异常（序列化失败、拿不到连接、Redis 返回错误等）都发生在命令执行之前或者表示命令被拒绝，XADD 一定没有执行
+    private static boolean isOutcomeUnknown(RuntimeException e) {
+        Throwable cause = NestedExceptionUtils.getMostSpecificCause(e);
+        return e instanceof QueryTimeoutException || cause instanceof RedisCommandTimeoutException
+            || cause instanceof RedisCommandInterruptedException;
+    }
+
+    // 从随机的桶开始依次借库存（避免所有借库存的请求都挤到同一个桶），返回借到库存的桶号，都没有时返回 -1
+    private int borrow(Long voucherId, int n, int home) {
+        int start = ThreadLocalRandom.current().nextInt(n);
+        for (int i = 0; i < n; i++) {
+            int bucket = (start + i) % n;
+            if (bucket == home) {
+                continue;
+            }
+            Long taken =
+                stringRedisTemplate.execute(BORROW_SCRIPT, Collections.singletonList(stockKey(voucherId, bucket)));
+            if (taken != null && taken == 1) {
+                return bucket;
+            }
+        }
+        return -1;
+    }
+
+    // 库存少于桶数时桶数减少到库存数
+    private int bucketCountFor(int stock) {
+        return Math.max(1, Math.min(buckets, stock));
+    }
+
+    // 平均拆分，余数分给前面的桶
+    private static int bucketStock(int stock, int n, int bucket) {
+        return stock / n + (bucket < stock % n ? 1 : 0);
+    }
+
+    private static byte[] raw(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String stockKey(Long voucherId, int bucket) {
+        return SECKILL_STOCK_KEY + "{" + voucherId + ":" + bucket + "}";
+    }
+
+    private static String orderKey(Long voucherId, int bucket) {
+        return SECKILL_ORDER_KEY + "{" + voucherId + ":" + bucket + "}";
+    }
+}
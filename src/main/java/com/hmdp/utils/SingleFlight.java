@@ -0,0 +1,89 @@
+package com.hmdp.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * @author hwj
+ * @create: 2024-09-04 20:12
+ * @Description: 单飞（single-flight）合并请求：同一个 key 在本节点同一时刻只有一个加载任务在执行，
+ *               其余并发请求等待并复用它的结果，用来防止热点 key 过期瞬间大量请求同时打到数据库
+ */
+@Component
+public class SingleFlight {
+
+    // 正在执行中的加载任务
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    // 实际执行的加载次数
+    private final LongAdder loads = new LongAdder();
+    // 被合并（复用他人结果）的请求次数
+    private final LongAdder coalesced = new LongAdder();
+    // 等待超时的请求次数
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * 执行加载任务，同一 key 的并发调用只会真正执行一次 loader
+     *
+     * @param key 合并的维度，一般就是缓存 key
+     * @param loader 加载函数（查数据库并写回缓存）
+     * @param timeoutMillis 等待其他线程加载结果的最长时间
+     * @return 加载结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> loader, long timeoutMillis) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            // 已有线程在加载，等待它的结果
+            coalesced.increment();
+            return (T)await(key, existing, timeoutMillis);
+        }
+
+        loads.increment();
+        try {
+            T result = loader.get();
+            future.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            // 加载结束后移除，之后的请求重新走缓存
+            inFlight.remove(key, future);
+        }
+    }
+
+    private Object await(String key, CompletableFuture<Object> future, long timeoutMillis) {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            throw new RuntimeException("等待缓存加载超时：" + key, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException)cause : new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("loads", loads.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("timeouts", timeouts.sum());
+        stats.put("inFlight", (long)inFlight.size());
+        return stats;
+    }
+}
@@ -0,0 +1,14 @@
+---
+--- 分桶库存模式：用户所属的桶库存不足时，到其他桶扣减一个库存
+---
+-- 1.库存key
+local stockKey = KEYS[1]
+
+-- 2.判断库存是否充足
+if ((tonumber(redis.call('get', stockKey)) or 0) <= 0) then
+    -- 2.1.库存不足，返回0
+    return 0
+end
+-- 3.扣库存 incrby stockKey -1
+redis.call('incrby', stockKey, -1)
+return 1
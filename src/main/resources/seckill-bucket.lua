@@ -0,0 +1,27 @@
+---
+--- 分桶库存模式：在用户所属的桶（按用户 id 取模）中扣库存并记录用户
+--- KEYS 使用同一个 hash tag（seckill:stock:{voucherId:桶号}、seckill:order:{voucherId:桶号}），集群模式下位于同一个槽
+---
+-- 1.参数列表
+-- 1.1.库存key
+local stockKey = KEYS[1]
+-- 1.2.订单key（一人一单，只记录归属该桶的用户）
+local orderKey = KEYS[2]
+-- 1.3.用户id
+local userId = ARGV[1]
+
+-- 2.判断用户是否下单 SISMEMBER orderKey userId
+if (redis.call('sismember', orderKey, userId) == 1) then
+    -- 2.1.存在，说明是重复下单，返回2
+    return 2
+end
+-- 3.先记录用户（同一用户的并发请求在这里就会被拦截）
+redis.call('sadd', orderKey, userId)
+-- 4.判断本桶库存是否充足
+if ((tonumber(redis.call('get', stockKey)) or 0) <= 0) then
+    -- 4.1.本桶库存不足，返回3，由调用方到其他桶借库存（借不到时再删除用户）
+    return 3
+end
+-- 4.2.扣库存 incrby stockKey -1
+redis.call('incrby', stockKey, -1)
+return 0
@@ -8,8 +8,10 @@
 local voucherId = ARGV[1]
 -- 1.2.用户id
 local userId = ARGV[2]
--- 1.3.订单id
-local orderId = ARGV[3]
+-- 1.3.订单序列号key（icr:order:yyyy:MM:dd）
+local sequenceKey = ARGV[3]
+-- 1.4.订单id的时间戳部分（已左移 32 位，十进制字符串）
+local idBase = ARGV[4]
 
 -- 2.数据key
 -- 2.1.库存key
@@ -21,17 +23,33 @@ local orderKey = 'seckill:order:' .. voucherId
 -- 3.1.判断库存是否充足 get stockKey
 if (tonumber(redis.call('get', stockKey)) <= 0) then
     -- 3.2.库存不足，返回1
-    return 1
+    return { 1 }
 end
 -- 3.2.判断用户是否下单 SISMEMBER orderKey userId
 if (redis.call('sismember', orderKey, userId) == 1) then
     -- 3.3.存在，说明是重复下单，返回2
-    return 2
+    return { 2 }
 end
 -- 3.4.扣库存 incrby stockKey -1
 redis.call('incrby', stockKey, -1)
 -- 3.5.下单（保存用户）sadd orderKey userId
 redis.call('sadd', orderKey, userId)
--- 3.6.发送消息到队列中， XADD stream.orders * k1 v1 k2 v2 ...
+-- 3.6.生成订单id（只有下单成功才消耗序列号）：订单id = 时间戳部分 + 当天的序列号
+local sequence = redis.call('incr', sequenceKey)
+-- Lua 的数字是双精度浮点数，超过 2^53 会丢失精度，所以把时间戳部分拆成高位和低 10 位，分别计算后再拼接
+local high = tonumber(string.sub(idBase, 1, -11)) or 0
+local low = tonumber(string.sub(idBase, -10)) + sequence
+if (low >= 1e10) then
+    high = high + 1
+    low = low - 1e10
+end
+local orderId
+if (high > 0) then
+    orderId = string.format('%d%010d', high, low)
+else
+    orderId = string.format('%d', low)
+end
+-- 3.7.发送消息到队列中， XADD stream.orders * k1 v1 k2 v2 ...
 redis.call('xadd', 'stream.orders', '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
-return 0
\ No newline at end of file
+-- 3.8.返回0和序列号，调用方用同样的方式计算出订单id
+return { 0, sequence }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package com.hmdp.service.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.hmdp.entity.VoucherOrder;
+
+/**
+ * @author hwj
+ * @create: 2024-09-30 20:50
+ * @Description: 批量创建订单前的去重：同一条消息被重复投递、同一用户对同一张券的多个订单只保留第一个
+ */
+class VoucherOrderServiceImplTest {
+
+    @Test
+    void distinctOrdersKeepsFirstPerUserAndVoucher() {
+        VoucherOrder first = order(1L, 1010L, 10L);
+        VoucherOrder otherVoucher = order(2L, 1010L, 11L);
+        VoucherOrder otherUser = order(3L, 1011L, 10L);
+        VoucherOrder redelivered = order(1L, 1010L, 10L);
+        VoucherOrder sameUserAndVoucher = order(4L, 1010L, 10L);
+
+        Map<String, VoucherOrder> orders = VoucherOrderServiceImpl
+            .distinctOrders(Arrays.asList(first, otherVoucher, otherUser, redelivered, sameUserAndVoucher));
+
+        assertEquals(Arrays.asList(first, otherVoucher, otherUser), new ArrayList<>(orders.values()));
+        assertSame(first, orders.values().iterator().next());
+    }
+
+    @Test
+    void distinctOrdersWithoutDuplicates() {
+        VoucherOrder a = order(1L, 1010L, 10L);
+        VoucherOrder b = order(2L, 1011L, 10L);
+        assertEquals(Arrays.asList(a, b),
+            new ArrayList<>(VoucherOrderServiceImpl.distinctOrders(Arrays.asList(a, b)).values()));
+    }
+
+    private static VoucherOrder order(Long id, Long userId, Long voucherId) {
+        return new VoucherOrder().setId(id).setUserId(userId).setVoucherId(voucherId);
+    }
+}
@@ -0,0 +1,96 @@
+package com.hmdp.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+import com.hmdp.entity.Shop;
+
+/**
+ * @author hwj
+ * @create: 2024-09-30 20:00
+ * @Description: 缓存编解码器：JSON 与二进制格式的往返编解码，以及按首字节（JSON、0x81/0x82 二进制）识别格式
+ */
+class CacheCodecTest {
+
+    private final JsonCacheCodec json = new JsonCacheCodec();
+
+    private final BinaryCacheCodec binary = new BinaryCacheCodec(json);
+
+    @Test
+    void jsonRoundTrip() {
+        Shop shop = shop();
+        byte[] bytes = json.encode(shop);
+        assertEquals('{', bytes[0]);
+        assertFalse(json.isRedisData(bytes));
+        assertEquals(shop, json.decode(bytes, Shop.class));
+
+        byte[] redisData = json.encodeRedisData(redisData(shop));
+        assertTrue(json.isRedisData(redisData));
+        RedisData decoded = json.decodeRedisData(redisData, Shop.class);
+        assertEquals(shop, decoded.getData());
+        assertEquals(redisData(shop).getExpireTime(), decoded.getExpireTime());
+    }
+
+    @Test
+    void binaryRoundTrip() {
+        Shop shop = shop();
+        byte[] bytes = binary.encode(shop);
+        assertEquals(BinaryCacheCodec.MAGIC_VALUE, bytes[0]);
+        assertFalse(binary.isRedisData(bytes));
+        assertEquals(shop, binary.decode(bytes, Shop.class));
+
+        byte[] redisData = binary.encodeRedisData(redisData(shop));
+        assertEquals(BinaryCacheCodec.MAGIC_REDIS_DATA, redisData[0]);
+        assertTrue(binary.isRedisData(redisData));
+        RedisData decoded = binary.decodeRedisData(redisData, Shop.class);
+        assertEquals(shop, decoded.getData());
+        assertEquals(3L, decoded.getRebuildCost());
+    }
+
+    @Test
+    void binaryReadsJsonWrittenBeforeSwitch() {
+        // 切换编解码器之前写入的 JSON 值由 fallback 解码
+        Shop shop = shop();
+        assertEquals(shop, binary.decode(json.encode(shop), Shop.class));
+        byte[] redisData = json.encodeRedisData(redisData(shop));
+        assertTrue(binary.isRedisData(redisData));
+        assertEquals(shop, binary.decodeRedisData(redisData, Shop.class).getData());
+    }
+
+    @Test
+    void toJsonSkipsDecoding() {
+        Shop shop = shop();
+        byte[] bytes = json.encode(shop);
+        RedisData plain = json.toJson(bytes);
+        assertNull(plain.getExpireTime());
+        assertEquals(new String(bytes, StandardCharsets.UTF_8),
+            new String((byte[])plain.getData(), StandardCharsets.UTF_8));
+
+        RedisData logical = json.toJson(json.encodeRedisData(redisData(shop)));
+        assertEquals(redisData(shop).getExpireTime(), logical.getExpireTime());
+        assertEquals(shop, json.decode((byte[])logical.getData(), Shop.class));
+        // 二进制格式没有 JSON 可取
+        assertNull(binary.toJson(binary.encode(shop)));
+    }
+
+    private static Shop shop() {
+        return new Shop().setId(1L).setName("103茶餐厅").setTypeId(1L)
+            .setImages("/imgs/shops/103.jpg").setArea("大关").setAddress("金华路锦昌文华苑29号")
+            .setX(120.149192).setY(30.316078).setAvgPrice(80L).setSold(4215).setComments(3035).setScore(37)
+            .setOpenHours("10:00-22:00")
+            .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+            .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+
+    private static RedisData redisData(Object data) {
+        RedisData redisData = new RedisData();
+        redisData.setData(data);
+        redisData.setExpireTime(LocalDateTime.of(2024, 9, 30, 20, 30, 0));
+        redisData.setRebuildCost(3L);
+        return redisData;
+    }
+}
@@ -0,0 +1,69 @@
+package com.hmdp.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+import com.hmdp.entity.Shop;
+
+import cn.hutool.core.util.StrUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * @author hwj
+ * @create: 2024-09-30 20:10
+ * @Description: 压缩编解码器：超过阈值的值用 LZ4 压缩（首字节 0x8C），低于阈值原样交给被包装的编解码器
+ */
+class CompressingCacheCodecTest {
+
+    private final JsonCacheCodec json = new JsonCacheCodec();
+
+    private final BinaryCacheCodec binary = new BinaryCacheCodec(json);
+
+    @Test
+    void compressedRoundTrip() {
+        CompressingCacheCodec codec = new CompressingCacheCodec(json, 64, new SimpleMeterRegistry());
+        Shop shop = shop().setAddress(StrUtil.repeat("大关路 ", 50));
+        byte[] bytes = codec.encode(shop);
+        assertEquals(CompressingCacheCodec.MAGIC_COMPRESSED, bytes[0]);
+        assertTrue(bytes.length < json.encode(shop).length);
+        assertFalse(codec.isRedisData(bytes));
+        assertEquals(shop, codec.decode(bytes, Shop.class));
+
+        byte[] redisData = codec.encodeRedisData(redisData(shop));
+        assertEquals(CompressingCacheCodec.MAGIC_COMPRESSED, redisData[0]);
+        assertTrue(codec.isRedisData(redisData));
+        assertEquals(shop, codec.decodeRedisData(redisData, Shop.class).getData());
+    }
+
+    @Test
+    void compressingKeepsSmallValuesAndReadsOtherFormats() {
+        CompressingCacheCodec codec = new CompressingCacheCodec(binary, 1024, new SimpleMeterRegistry());
+        Shop shop = shop();
+        // 低于阈值不压缩，与被包装的编解码器结果相同
+        byte[] bytes = codec.encode(shop);
+        assertArrayEquals(binary.encode(shop), bytes);
+        assertEquals(shop, codec.decode(bytes, Shop.class));
+        // 未压缩的 JSON 同样可以读取
+        assertEquals(shop, codec.decode(json.encode(shop), Shop.class));
+    }
+
+    private static Shop shop() {
+        return new Shop().setId(1L).setName("103茶餐厅").setTypeId(1L)
+            .setImages("/imgs/shops/103.jpg").setArea("大关").setAddress("金华路锦昌文华苑29号")
+            .setX(120.149192).setY(30.316078).setAvgPrice(80L).setSold(4215).setComments(3035).setScore(37)
+            .setOpenHours("10:00-22:00")
+            .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+            .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+
+    private static RedisData redisData(Object data) {
+        RedisData redisData = new RedisData();
+        redisData.setData(data);
+        redisData.setExpireTime(LocalDateTime.of(2024, 9, 30, 20, 30, 0));
+        redisData.setRebuildCost(3L);
+        return redisData;
+    }
+}
@@ -0,0 +1,54 @@
+package com.hmdp.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author hwj
+ * @create: 2024-09-30 20:30
+ * @Description: Count-Min Sketch：计数只会高估不会低估，衰减后计数减半直至归零
+ */
+class CountMinSketchTest {
+
+    @Test
+    void neverUnderestimates() {
+        CountMinSketch sketch = new CountMinSketch(256);
+        // key 的数量远多于每行的计数器个数，一定有冲突
+        for (int i = 0; i < 2000; i++) {
+            sketch.increment("cache:shop:" + i, i % 10 + 1);
+        }
+        for (int i = 0; i < 2000; i++) {
+            assertTrue(sketch.estimate("cache:shop:" + i) >= i % 10 + 1);
+        }
+    }
+
+    @Test
+    void incrementReturnsEstimate() {
+        CountMinSketch sketch = new CountMinSketch(4096);
+        assertEquals(0, sketch.estimate("cache:shop:1"));
+        for (int i = 1; i <= 100; i++) {
+            assertEquals(i, sketch.increment("cache:shop:1", 1));
+        }
+        assertEquals(150, sketch.increment("cache:shop:1", 50));
+    }
+
+    @Test
+    void decayHalvesCounts() {
+        CountMinSketch sketch = new CountMinSketch(4096);
+        sketch.increment("cache:shop:1", 100);
+        sketch.increment("cache:shop:2", 7);
+        sketch.decay();
+        assertEquals(50, sketch.estimate("cache:shop:1"));
+        assertEquals(3, sketch.estimate("cache:shop:2"));
+        sketch.decay();
+        assertEquals(25, sketch.estimate("cache:shop:1"));
+        assertEquals(1, sketch.estimate("cache:shop:2"));
+        // 不再访问的 key 经过若干个周期后归零
+        for (int i = 0; i < 10; i++) {
+            sketch.decay();
+        }
+        assertEquals(0, sketch.estimate("cache:shop:1"));
+        assertEquals(0, sketch.estimate("cache:shop:2"));
+    }
+}
@@ -0,0 +1,81 @@
+package com.hmdp.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author hwj
+ * @create: 2024-09-30 20:10
+ * @Description: 一级缓存：分段 LRU 淘汰、TTL 过期，以及按指定过期时间放入（读回快照）
+ */
+class LocalCacheTest {
+
+    // 这几个 key 的 hashCode 相同，一定落在同一个分段
+    private static final String K1 = "AaAa";
+    private static final String K2 = "AaBB";
+    private static final String K3 = "BBAa";
+
+    @Test
+    void evictsLeastRecentlyAccessed() {
+        // 16 个分段，每个分段最多 2 个条目
+        LocalCache<String> cache = new LocalCache<>(32, 60_000);
+        cache.put(K1, "1");
+        cache.put(K2, "2");
+        // 访问 K1 后，K2 成为最久未访问的条目
+        assertEquals("1", cache.get(K1));
+        cache.put(K3, "3");
+        assertEquals("1", cache.get(K1));
+        assertNull(cache.get(K2));
+        assertEquals("3", cache.get(K3));
+    }
+
+    @Test
+    void sizeIsBounded() {
+        LocalCache<Integer> cache = new LocalCache<>(64, 60_000);
+        for (int i = 0; i < 10_000; i++) {
+            cache.put("cache:shop:" + i, i);
+        }
+        assertTrue(cache.size() <= 64);
+    }
+
+    @Test
+    void expiresAfterTtl() throws InterruptedException {
+        LocalCache<String> cache = new LocalCache<>(16, 50);
+        cache.put(K1, "1");
+        assertEquals("1", cache.get(K1));
+        Thread.sleep(100);
+        assertNull(cache.get(K1));
+    }
+
+    @Test
+    void putWithExpireAt() throws InterruptedException {
+        LocalCache<String> cache = new LocalCache<>(16, 50);
+        long now = System.currentTimeMillis();
+        // 已过期的条目不放入
+        cache.put(K1, "1", now - 1);
+        assertNull(cache.get(K1));
+        // 存活时间不超过 ttl
+        cache.put(K2, "2", now + 60_000);
+        Map<String, Long> expireAts = new HashMap<>();
+        cache.forEach((key, value, expireAt) -> expireAts.put(key, expireAt));
+        assertTrue(expireAts.get(K2) <= System.currentTimeMillis() + 50);
+        Thread.sleep(100);
+        assertNull(cache.get(K2));
+    }
+
+    @Test
+    void invalidate() {
+        LocalCache<String> cache = new LocalCache<>(16, 60_000);
+        cache.put(K1, "1");
+        cache.put("cache:shop:1", "2");
+        cache.invalidate(K1);
+        assertNull(cache.get(K1));
+        assertEquals("2", cache.get("cache:shop:1"));
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+}
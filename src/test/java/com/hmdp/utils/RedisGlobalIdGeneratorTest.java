@@ -0,0 +1,73 @@
+package com.hmdp.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author hwj
+ * @create: 2024-09-30 20:40
+ * @Description: 订单 id 的计算：seckill.lua 在脚本中用双精度浮点数拼出订单 id，调用方用 时间戳部分 | 序列号 得到同一个 id，
+ *               两边必须一致。这里按脚本的步骤逐步模拟（Lua 的数字就是 double），和 Java 的结果比较
+ */
+class RedisGlobalIdGeneratorTest {
+
+    private final RedisGlobalIdGenerator generator = new RedisGlobalIdGenerator();
+
+    @Test
+    void sequenceKeyPerDay() {
+        assertEquals("icr:order:2024:09:30", generator.sequenceKey("order", LocalDateTime.of(2024, 9, 30, 20, 40)));
+    }
+
+    @Test
+    void timestampBitsLeaveRoomForSequence() {
+        long bits = generator.timestampBits(LocalDateTime.of(2024, 9, 30, 20, 40));
+        assertEquals(0, bits & 0xFFFFFFFFL);
+        assertTrue(bits > 0);
+        assertEquals(0, generator.timestampBits(LocalDateTime.of(2024, 1, 1, 0, 0)));
+    }
+
+    @Test
+    void luaIdMatchesJava() {
+        long now = generator.timestampBits(LocalDateTime.of(2024, 9, 30, 20, 40));
+        long[] sequences = {1, 2, 9_999, 1L << 31, 0xFFFFFFFFL};
+        for (long sequence : sequences) {
+            assertLuaId(now, sequence);
+        }
+        // 时间戳部分不足 10 位（高位为空）、低 10 位相加后进位
+        assertLuaId(0, 1);
+        assertLuaId(1L << 32, 1);
+        assertLuaId(9_999_999_999L - 9_999_999_999L % (1L << 32), 0xFFFFFFFFL);
+        Random random = new Random(25);
+        for (int i = 0; i < 100_000; i++) {
+            long timestamp = random.nextInt(Integer.MAX_VALUE);
+            long sequence = 1 + (random.nextLong() & 0xFFFFFFFFL) % 0xFFFFFFFFL;
+            assertLuaId(timestamp << 32, sequence);
+        }
+    }
+
+    private static void assertLuaId(long idBase, long sequence) {
+        String expected = String.valueOf(idBase | sequence);
+        assertEquals(expected, luaOrderId(String.valueOf(idBase), sequence), "idBase=" + idBase + ", seq=" + sequence);
+    }
+
+    // 与 seckill.lua 3.6 的计算步骤相同
+    private static String luaOrderId(String idBase, long sequence) {
+        // local high = tonumber(string.sub(idBase, 1, -11)) or 0
+        double high = idBase.length() > 10 ? Double.parseDouble(idBase.substring(0, idBase.length() - 10)) : 0;
+        // local low = tonumber(string.sub(idBase, -10)) + sequence
+        double low = Double.parseDouble(idBase.substring(Math.max(0, idBase.length() - 10))) + (double)sequence;
+        if (low >= 1e10) {
+            high = high + 1;
+            low = low - 1e10;
+        }
+        if (high > 0) {
+            // string.format('%d%010d', high, low)
+            return String.format("%d%010d", (long)high, (long)low);
+        }
+        return String.format("%d", (long)low);
+    }
+}
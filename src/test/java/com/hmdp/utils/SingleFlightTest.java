@@ -0,0 +1,107 @@
+package com.hmdp.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author hwj
+ * @create: 2024-09-30 20:20
+ * @Description: 单飞：同一个 key 的并发加载只执行一次，其余请求复用结果或异常
+ */
+class SingleFlightTest {
+
+    private static final int THREADS = 8;
+
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void coalescesConcurrentLoads() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        List<Future<String>> results = submitAll(() -> {
+            loads.incrementAndGet();
+            await(release);
+            return "shop";
+        });
+        // 等其余线程都在等待第一个线程的结果后再放行
+        awaitCoalesced(THREADS - 1);
+        release.countDown();
+        for (Future<String> result : results) {
+            assertEquals("shop", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1L, singleFlight.stats().get("loads"));
+        assertEquals(0L, singleFlight.stats().get("inFlight"));
+    }
+
+    @Test
+    void sharesFailure() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> results = submitAll(() -> {
+            await(release);
+            throw new IllegalStateException("db down");
+        });
+        awaitCoalesced(THREADS - 1);
+        release.countDown();
+        for (Future<String> result : results) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        // 失败后不保留，下一次调用重新加载
+        assertEquals("shop", singleFlight.execute("cache:shop:1", () -> "shop", 1000));
+    }
+
+    @Test
+    void sequentialCallsLoadAgain() {
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            singleFlight.execute("cache:shop:1", loads::incrementAndGet, 1000);
+        }
+        assertEquals(3, loads.get());
+    }
+
+    private List<Future<String>> submitAll(Supplier<String> loader) {
+        List<Future<String>> results = new ArrayList<>(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> singleFlight.execute("cache:shop:1", loader, 5000)));
+        }
+        return results;
+    }
+
+    private void awaitCoalesced(long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (singleFlight.stats().get("coalesced") < expected) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待合并的请求超时");
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+}